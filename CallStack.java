@@ -1,42 +1,198 @@
 /**
 * This class simulates memory.  
 *
+* The frames are kept in a backing Deque, a CircularArrayDequeImplementation
+* unless another one is given. Setting the system property callstack.store
+* to "chunked" makes every CallStack use a ChunkedArrayDeque instead, which
+* never copies frames to grow, for very deep stacks.
+*
+* Every push and pop is also recorded as a MethodCallEvent or
+* MethodReturnEvent when Java Flight Recorder is recording them.
+*
 * @author Ani Laliashvili
 */
 
-public class CallStack extends CircularArrayDequeImplementation<Method> {
-    public SimulationComponent simComp;
+public class CallStack implements Deque<Frame> {
+    public static final long UNLIMITED = Long.MAX_VALUE;
+    public static final String STORE_PROPERTY = "callstack.store";
+
+    public SimulationListener simListener;
+    private Deque<Frame> frames;  // the backing store
+    private long memoryUsed;   // total size of the frames on the stack
+    private long memoryLimit;  // most memory the frames may use
+    private int depth;         // number of frames on the stack
     
-    public CallStack(SimulationComponent simulationComponent){
-        simComp = simulationComponent;
+    public CallStack(SimulationListener simulationListener){
+        this(simulationListener, newStore());
     } // end constructor
+
+    public CallStack(SimulationListener simulationListener, Deque<Frame> store){
+        simListener = simulationListener;
+        frames = store;
+        memoryLimit = UNLIMITED;
+        // start SimulationEvents watching for recordings now, not in the first step
+        SimulationEvents.isRecording();
+    } // end constructor
+
+    /**
+    * Returns the backing store named by the callstack.store system property.
+    * @return store a new, empty deque
+    */
+    public static Deque<Frame> newStore(){
+        if ("chunked".equals(System.getProperty(STORE_PROPERTY))) {
+            return new ChunkedArrayDeque<Frame>();
+        }
+        return new CircularArrayDequeImplementation<Frame>();
+    }
     
     /**
-    * Adds method to front and adds it to the simulation component.
+    * Adds a frame to front and notifies the simulation listener.
+    * Throws a StackOverflowException, and leaves the stack as it was,
+    * if the frame doesn't fit in the memory limit.
     */
     @Override
-    public void addFront(Method m){
-        super.addFront(m);
-        simComp.addMethodToGraphicalStack(m);
+    public void addFront(Frame m){
+        int size = m.getSize();
+        if (memoryUsed + size > memoryLimit) {
+            throw new StackOverflowException(m.getMethod(), memoryUsed, memoryLimit);
+        }
+        frames.addFront(m);
+        memoryUsed += size;
+        depth++;
+        if (SimulationEvents.isRecording()) {
+            MethodCallEvent.emit(m.getMethod(), depth, memoryUsed);
+        }
+        simListener.methodPushed(m);
     }
     
     /**
-    * Removes method from the front and removes it from the simulation component.
-    * @return m removed method
+    * Removes a frame from the front and notifies the simulation listener.
+    * @return m removed frame
     */
     @Override
-    public Method removeFront(){
-        Method m = super.removeFront();
-        simComp.removeMethodFromGraphicalStack(m);
+    public Frame removeFront(){
+        Frame m = frames.removeFront();
+        memoryUsed -= m.getSize();
+        depth--;
+        if (SimulationEvents.isRecording()) {
+            MethodReturnEvent.emit(m.getMethod(), depth);
+        }
+        simListener.methodPopped(m);
         return m;
     }
+
+    /**
+    * Removes all frames, without notifying the simulation listener.
+    */
+    @Override
+    public void clear(){
+        frames.clear();
+        memoryUsed = 0;
+        depth = 0;
+    }
+
+    /**
+    * Returns the frames on the stack from the given depth up, bottom
+    * first, without notifying the simulation listener. Works with any
+    * backing store: the frames are taken off it and put back.
+    * @param from how many frames at the bottom to leave out
+    * @return stack the frames
+    */
+    public Frame[] getFrames(int from){
+        Frame[] stack = new Frame[Math.max(0, depth - from)];
+        for (int i = stack.length - 1; i >= 0; i--) {
+            stack[i] = frames.removeFront();
+        }
+        for (Frame m : stack) {
+            frames.addFront(m);
+        }
+        return stack;
+    }
+
+    /**
+    * Replaces the frames on the stack from the given depth up, without
+    * notifying the simulation listener, which has to be told about the
+    * new stack some other way. The memory limit is not checked.
+    * @param from how many frames at the bottom to keep
+    * @param stack the frames to put above them, bottom first
+    */
+    public void setFrames(int from, Frame[] stack){
+        while (depth > from) {
+            Frame m = frames.removeFront();
+            memoryUsed -= m.getSize();
+            depth--;
+        }
+        for (Frame m : stack) {
+            frames.addFront(m);
+            memoryUsed += m.getSize();
+            depth++;
+        }
+    }
+
+    /**
+    * Returns the frame on top of the stack.
+    * @return the top frame
+    */
+    @Override
+    public Frame peekFront(){
+        return frames.peekFront();
+    }
+
+    /**
+    * Returns true if there are no frames on the stack.
+    */
+    @Override
+    public boolean isEmpty(){
+        return frames.isEmpty();
+    }
+
+    /**
+    * Returns the number of frames on the stack.
+    * @return depth the frame count
+    */
+    public int getDepth(){
+        return depth;
+    }
+
+    /**
+    * Returns the total size of the frames on the stack.
+    * @return memoryUsed the memory in use
+    */
+    public long getMemoryUsed(){
+        return memoryUsed;
+    }
+
+    /**
+    * Returns the most memory the frames may use.
+    * @return memoryLimit the memory limit
+    */
+    public long getMemoryLimit(){
+        return memoryLimit;
+    }
+
+    /**
+    * Sets the most memory the frames may use. Frames already on the
+    * stack stay there even if they don't fit.
+    * @param limit the memory limit, or UNLIMITED
+    */
+    public void setMemoryLimit(long limit){
+        memoryLimit = limit;
+    }
     
     
+    /**
+    * Returns the frames as a String, top first.
+    */
+    @Override
+    public String toString(){
+        return frames.toString();
+    }
+
     /** 
      * Throws an UnsupportedOperationException.
      */
     @Override
-    public Method peekBack(){
+    public Frame peekBack(){
         throw new UnsupportedOperationException();
     }
     
@@ -44,7 +200,7 @@ public class CallStack extends CircularArrayDequeImplementation<Method> {
      * Throws an UnsupportedOperationException.
      */
     @Override
-    public void addBack(Method m){
+    public void addBack(Frame m){
         throw new UnsupportedOperationException();
     }
     
@@ -52,7 +208,7 @@ public class CallStack extends CircularArrayDequeImplementation<Method> {
      * Throws an UnsupportedOperationException.
      */
     @Override
-    public Method removeBack(){
+    public Frame removeBack(){
         throw new UnsupportedOperationException();
     }  
 }
@@ -0,0 +1,251 @@
+import java.util.NoSuchElementException;
+
+/**
+* This class creates a deque from a linked list of fixed-size array chunks.
+*
+* Growing adds a chunk at the end that is full and shrinking unlinks a chunk
+* once it is empty, so no operation ever copies the items already in the
+* deque, however many there are. Unlinked chunks go into a small pool and
+* are reused before new ones are allocated, so a deque whose size hovers
+* around a chunk boundary doesn't allocate at all. Removed slots are set to
+* null, so the deque never keeps a removed item alive.
+*
+* @author Ani Laliashvili @author Sarah Gregory
+*/
+
+public class ChunkedArrayDeque<T> implements Deque<T> {
+    public static final int CHUNK_SIZE = 1024;
+    public static final int POOL_SIZE = 2;
+
+    /**
+    * One chunk of the deque, linked to its neighbours.
+    */
+    private static final class Chunk {
+        final Object[] items = new Object[CHUNK_SIZE];
+        Chunk prev;
+        Chunk next;
+    }
+
+    private Chunk frontChunk; // chunk holding the front item
+    private Chunk backChunk;  // chunk holding the back item
+    private int frontIndex;   // index of the front item in frontChunk
+    private int backIndex;    // index of the back item in backChunk
+    private int size;         // number of items in the deque
+
+    private Chunk pool;       // spare chunks, linked through next
+    private int pooled;       // number of spare chunks
+
+    public ChunkedArrayDeque() {
+        frontChunk = new Chunk();
+        backChunk = frontChunk;
+        recenter();
+    } // end constructor
+
+    /**
+     * Adds an item to the front of this deque
+     * @param item The item to add.
+     */
+    public void addFront(T item){
+        if (frontIndex == 0) {
+            Chunk chunk = obtain();
+            chunk.next = frontChunk;
+            frontChunk.prev = chunk;
+            frontChunk = chunk;
+            frontIndex = CHUNK_SIZE;
+        }
+        frontIndex--;
+        frontChunk.items[frontIndex] = item;
+        size++;
+    }
+
+    /**
+     * Removes the item from the front of this deque, and returns it.
+     * Throws a NoSuchElementException if the deque is empty
+     * @return the item at the top of the deque
+     */
+    public T removeFront(){
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        T item = itemAt(frontChunk, frontIndex);
+        frontChunk.items[frontIndex] = null;
+        frontIndex++;
+        size--;
+        if (size == 0) {
+            recenter();
+        } else if (frontIndex == CHUNK_SIZE) {
+            Chunk chunk = frontChunk;
+            frontChunk = chunk.next;
+            frontChunk.prev = null;
+            frontIndex = 0;
+            recycle(chunk);
+        }
+        return item;
+    }
+
+    /**
+     * Adds an item to the back of this deque
+     * @param item The item to add.
+     */
+    public void addBack(T item){
+        if (backIndex == CHUNK_SIZE - 1) {
+            Chunk chunk = obtain();
+            chunk.prev = backChunk;
+            backChunk.next = chunk;
+            backChunk = chunk;
+            backIndex = -1;
+        }
+        backIndex++;
+        backChunk.items[backIndex] = item;
+        size++;
+    }
+
+    /**
+     * Removes the item from the back of this deque, and returns it.
+     * Throws a NoSuchElementException if the deque is empty
+     * @return the item at the back of the deque
+     */
+    public T removeBack(){
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        T item = itemAt(backChunk, backIndex);
+        backChunk.items[backIndex] = null;
+        backIndex--;
+        size--;
+        if (size == 0) {
+            recenter();
+        } else if (backIndex < 0) {
+            Chunk chunk = backChunk;
+            backChunk = chunk.prev;
+            backChunk.next = null;
+            backIndex = CHUNK_SIZE - 1;
+            recycle(chunk);
+        }
+        return item;
+    }
+
+    /**
+     * Returns the item at the front of the deque, without removing it.
+     * Throws a NoSuchElementException if the deque is empty
+     * @return the item at the top of the deque
+     */
+    public T peekFront(){
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return itemAt(frontChunk, frontIndex);
+    }
+
+    /**
+     * Returns the item at the back of the deque, without removing it.
+     * Throws a NoSuchElementException if the deque is empty
+     * @return the item at the back of the deque
+     */
+    public T peekBack(){
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return itemAt(backChunk, backIndex);
+    }
+
+    /**
+    * Returns true if the deque is empty.
+    */
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    /**
+    * Returns the number of items in the deque.
+    */
+    public int size(){
+        return size;
+    }
+
+    /**
+    * Removes all items from the deque. One chunk is kept, plus a full pool.
+    */
+    public void clear(){
+        for (Chunk chunk = frontChunk; chunk != null; ) {
+            Chunk next = chunk.next;
+            int from = chunk == frontChunk ? frontIndex : 0;
+            int to = chunk == backChunk ? backIndex : CHUNK_SIZE - 1;
+            for (int i = from; i <= to; i++) {
+                chunk.items[i] = null;
+            }
+            if (chunk != frontChunk) {
+                chunk.prev = null;
+                chunk.next = null;
+                recycle(chunk);
+            }
+            chunk = next;
+        }
+        frontChunk.next = null;
+        backChunk = frontChunk;
+        size = 0;
+        recenter();
+    }
+
+    /**
+    * Returns deque as a String.
+    * @return arrayString String version of the deque
+    */
+    public String toString(){
+        StringBuilder arrayString = new StringBuilder("[");
+        Chunk chunk = frontChunk;
+        int index = frontIndex;
+        for (int i = 0; i < size; i++) {
+            if (index == CHUNK_SIZE) {
+                chunk = chunk.next;
+                index = 0;
+            }
+            if (i > 0) {
+                arrayString.append(", ");
+            }
+            arrayString.append(chunk.items[index]);
+            index++;
+        }
+        return arrayString.append("]").toString();
+    }
+
+    /**
+    * Points an empty deque at the middle of its only chunk, so it can
+    * grow either way before it needs another one.
+    */
+    private void recenter(){
+        frontIndex = CHUNK_SIZE / 2;
+        backIndex = frontIndex - 1;
+    }
+
+    private Chunk obtain(){
+        if (pool == null) {
+            return new Chunk();
+        }
+        Chunk chunk = pool;
+        pool = chunk.next;
+        chunk.next = null;
+        pooled--;
+        return chunk;
+    }
+
+    /**
+    * Keeps an empty chunk for reuse if the pool has room; otherwise it is
+    * left for the garbage collector.
+    */
+    private void recycle(Chunk chunk){
+        chunk.prev = null;
+        if (pooled < POOL_SIZE) {
+            chunk.next = pool;
+            pool = chunk;
+            pooled++;
+        } else {
+            chunk.next = null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T itemAt(Chunk chunk, int index){
+        return (T) chunk.items[index];
+    }
+}
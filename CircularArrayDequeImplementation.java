@@ -1,77 +1,89 @@
 import java.util.NoSuchElementException;
 
 /**
-* This class creates a deque using a circular array.  
+* This class creates a deque using a circular array.
+*
+* The capacity is always a power of two, so indexes wrap around with a
+* bit mask instead of %. Removed slots are set to null so the deque never
+* keeps a removed item alive. The array doubles when it is full and halves
+* when it drops to a quarter full, so a deque that grows and shrinks around
+* the same size doesn't keep reallocating.
 *
 * @author Ani Laliashvili @author Sarah Gregory
 */
 
 public class CircularArrayDequeImplementation<T> implements Deque<T> {
+    public static final int MIN_CAPACITY = 16;
+
     public T[] items; // circular array
     public int frontIndex;
     public int backIndex;
-    
+    private int size; // number of items in the deque
+
     public CircularArrayDequeImplementation() {
-        @SuppressWarnings("unchecked")
-        T[] tmp = (T[]) new Object[10];
-        items = tmp;
+        items = newArray(MIN_CAPACITY);
         frontIndex = 0;
-        backIndex = 9;
+        backIndex = MIN_CAPACITY - 1;
+        size = 0;
     } // end constructor
-    
-    /** 
+
+    /**
      * Adds an item to the front of this deque
      * @param item The item to add.
      */
     public void addFront(T item){
         ensureCapacity();
-        frontIndex = (frontIndex + items.length - 1) % items.length;
+        frontIndex = (frontIndex - 1) & (items.length - 1);
         items[frontIndex] = item;
+        size++;
     }
-    
-    /** 
+
+    /**
      * Removes the item from the front of this deque, and returns it.
      * Throws a NoSuchElementException if the deque is empty
      * @return the item at the top of the deque
      */
     public T removeFront(){
-        T item;
         if (isEmpty()) {
             throw new NoSuchElementException();
-        } else { 
-            item = items[frontIndex];
-            frontIndex = (frontIndex + 1) % items.length;
         }
+        T item = items[frontIndex];
+        items[frontIndex] = null;
+        frontIndex = (frontIndex + 1) & (items.length - 1);
+        size--;
+        shrinkIfSparse();
         return item;
     }
-    
-    /** 
+
+    /**
      * Adds an item to the back of this deque
      * @param item The item to add.
      */
     public void addBack(T item){
         ensureCapacity();
-        backIndex = (backIndex + 1) % items.length;
+        backIndex = (backIndex + 1) & (items.length - 1);
         items[backIndex] = item;
+        size++;
     }
-    
-    /** 
+
+    /**
      * Removes the item from the back of this deque, and returns it.
      * Throws a NoSuchElementException if the deque is empty
      * @return the item at the top of the deque
      */
     public T removeBack(){
-        T item;
         if (isEmpty()) {
             throw new NoSuchElementException();
-        } else { 
-            item = items[backIndex];
-            backIndex = (backIndex + items.length -1) % items.length;
-        } 
+        }
+        T item = items[backIndex];
+        items[backIndex] = null;
+        backIndex = (backIndex - 1) & (items.length - 1);
+        size--;
+        shrinkIfSparse();
         return item;
     }
-    
-    /** 
+
+    /**
      * Returns the item at the front of the deque, without removing it.
      * Throws a NoSuchElementException if the deque is empty
      * @return the item at the top of the deque
@@ -79,11 +91,11 @@ public class CircularArrayDequeImplementation<T> implements Deque<T> {
     public T peekFront(){
         if (isEmpty()) {
             throw new NoSuchElementException();
-        } 
+        }
         return items[frontIndex];
     }
-    
-    /** 
+
+    /**
      * Returns the item at the front of the deque, without removing it.
      * Throws a NoSuchElementException if the deque is empty
      * @return the item at the top of the deque
@@ -94,53 +106,80 @@ public class CircularArrayDequeImplementation<T> implements Deque<T> {
         }
         return items[backIndex];
     }
-    
-    /** 
-    * Returns true if the deque is empty. 
+
+    /**
+    * Returns true if the deque is empty.
     */
     public boolean isEmpty(){
-        return frontIndex == ((backIndex + 1) % items.length);
+        return size == 0;
     }
 
-    /** 
-    * Returns true if the deque is full 
+    /**
+    * Returns true if the deque is full
     */
     public boolean isFull(){
-        return frontIndex == ((backIndex + 2) % items.length);
+        return size == items.length;
+    }
+
+    /**
+    * Returns the number of items in the deque.
+    */
+    public int size(){
+        return size;
     }
-    
-    /** 
+
+    /**
     * Checks if the deque is full and doubles it in size if it is.
     */
     public void ensureCapacity(){
-      if (isFull()) {
-        int oldSize = items.length;
-        int newSize = 2*oldSize;
-        @SuppressWarnings("unchecked")
-        T[] tmp = (T[]) new Object[newSize];
-
-        for (int i = 0; i < oldSize - 1; i++){
-          tmp[i] = items[frontIndex];
-          frontIndex = (frontIndex + 1) % items.length;
+        if (isFull()) {
+            resize(2 * items.length);
+        }
+    }
+
+    /**
+    * Halves the array once it is only a quarter full. Halving leaves it
+    * half full, so it takes as many removes again before the next shrink
+    * or adds before the next grow.
+    */
+    private void shrinkIfSparse(){
+        if (items.length > MIN_CAPACITY && size <= items.length / 4) {
+            resize(items.length / 2);
         }
-        backIndex = oldSize - 2;
+    }
+
+    /**
+    * Moves the items into a new array of the given capacity, starting at
+    * index 0. The items are in at most two contiguous runs: from frontIndex
+    * to the end of the array, and from the start of the array on.
+    */
+    private void resize(int capacity){
+        T[] tmp = newArray(capacity);
+        int firstRun = Math.min(size, items.length - frontIndex);
+        System.arraycopy(items, frontIndex, tmp, 0, firstRun);
+        System.arraycopy(items, 0, tmp, firstRun, size - firstRun);
+        items = tmp;
         frontIndex = 0;
-          items = tmp;
-      }
+        backIndex = (size - 1) & (capacity - 1);
     }
-    
-    /** 
-    * Removes all items from the deque. 
+
+    /**
+    * Removes all items from the deque.
     */
     public void clear(){
+        if (items.length > MIN_CAPACITY) {
+            items = newArray(MIN_CAPACITY);
+        } else {
+            for (int i = 0; i < size; i++){
+                items[(frontIndex + i) & (items.length - 1)] = null;
+            }
+        }
         frontIndex = 0;
         backIndex = items.length - 1;
-        for (int i = 0; i < items.length; i++){
-            items[i] = null;
-        }
+        size = 0;
     }
 
-    /** 
+    /**
     * Returns deque as a String.
     * @return arrayString String version of the deque
     */
@@ -150,9 +189,9 @@ public class CircularArrayDequeImplementation<T> implements Deque<T> {
             arrayString = "frontIndex is: " + frontIndex + ", backIndex is: "+ backIndex + ", The array is Empty.";
         } else {
             arrayString = "frontIndex is: " + frontIndex + ", backIndex is: " + backIndex + ", Deque elements: ";
-            for (int front = frontIndex; front != (backIndex+1)%items.length; front = (front + 1) % items.length) {
-                arrayString = arrayString + items[front];
-                if (front != (backIndex+1)%items.length - 1){
+            for (int i = 0; i < size; i++) {
+                arrayString = arrayString + items[(frontIndex + i) & (items.length - 1)];
+                if (i != size - 1){
                     arrayString = arrayString + ", ";
                 }
             }
@@ -160,4 +199,9 @@ public class CircularArrayDequeImplementation<T> implements Deque<T> {
         System.out.println(arrayString);
         return arrayString;
     }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T[] newArray(int capacity){
+        return (T[]) new Object[capacity];
+    }
 }
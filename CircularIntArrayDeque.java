@@ -0,0 +1,196 @@
+import java.util.NoSuchElementException;
+
+/**
+* This class creates a deque of int values using a circular array.
+* It has the same contract and layout as CircularArrayDequeImplementation,
+* but stores primitives directly so adding an item never allocates a
+* Integer.
+*
+* The capacity is always a power of two, so indexes wrap around with a
+* bit mask instead of %. The array doubles when it is full and halves when
+* it drops to a quarter full.
+*
+* @author Ani Laliashvili @author Sarah Gregory
+*/
+
+public class CircularIntArrayDeque {
+    public static final int MIN_CAPACITY = 16;
+
+    public int[] items; // circular array
+    public int frontIndex;
+    public int backIndex;
+    private int size; // number of items in the deque
+
+    public CircularIntArrayDeque() {
+        items = new int[MIN_CAPACITY];
+        frontIndex = 0;
+        backIndex = MIN_CAPACITY - 1;
+        size = 0;
+    } // end constructor
+
+    /**
+     * Adds an item to the front of this deque
+     * @param item The item to add.
+     */
+    public void addFront(int item){
+        ensureCapacity();
+        frontIndex = (frontIndex - 1) & (items.length - 1);
+        items[frontIndex] = item;
+        size++;
+    }
+
+    /**
+     * Removes the item from the front of this deque, and returns it.
+     * Throws a NoSuchElementException if the deque is empty
+     * @return the item at the top of the deque
+     */
+    public int removeFront(){
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        int item = items[frontIndex];
+        frontIndex = (frontIndex + 1) & (items.length - 1);
+        size--;
+        shrinkIfSparse();
+        return item;
+    }
+
+    /**
+     * Adds an item to the back of this deque
+     * @param item The item to add.
+     */
+    public void addBack(int item){
+        ensureCapacity();
+        backIndex = (backIndex + 1) & (items.length - 1);
+        items[backIndex] = item;
+        size++;
+    }
+
+    /**
+     * Removes the item from the back of this deque, and returns it.
+     * Throws a NoSuchElementException if the deque is empty
+     * @return the item at the top of the deque
+     */
+    public int removeBack(){
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        int item = items[backIndex];
+        backIndex = (backIndex - 1) & (items.length - 1);
+        size--;
+        shrinkIfSparse();
+        return item;
+    }
+
+    /**
+     * Returns the item at the front of the deque, without removing it.
+     * Throws a NoSuchElementException if the deque is empty
+     * @return the item at the top of the deque
+     */
+    public int peekFront(){
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return items[frontIndex];
+    }
+
+    /**
+     * Returns the item at the front of the deque, without removing it.
+     * Throws a NoSuchElementException if the deque is empty
+     * @return the item at the top of the deque
+     */
+    public int peekBack(){
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return items[backIndex];
+    }
+
+    /**
+    * Returns true if the deque is empty.
+    */
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    /**
+    * Returns true if the deque is full
+    */
+    public boolean isFull(){
+        return size == items.length;
+    }
+
+    /**
+    * Returns the number of items in the deque.
+    */
+    public int size(){
+        return size;
+    }
+
+    /**
+    * Checks if the deque is full and doubles it in size if it is.
+    */
+    public void ensureCapacity(){
+        if (isFull()) {
+            resize(2 * items.length);
+        }
+    }
+
+    /**
+    * Halves the array once it is only a quarter full. Halving leaves it
+    * half full, so it takes as many removes again before the next shrink
+    * or adds before the next grow.
+    */
+    private void shrinkIfSparse(){
+        if (items.length > MIN_CAPACITY && size <= items.length / 4) {
+            resize(items.length / 2);
+        }
+    }
+
+    /**
+    * Moves the items into a new array of the given capacity, starting at
+    * index 0. The items are in at most two contiguous runs: from frontIndex
+    * to the end of the array, and from the start of the array on.
+    */
+    private void resize(int capacity){
+        int[] tmp = new int[capacity];
+        int firstRun = Math.min(size, items.length - frontIndex);
+        System.arraycopy(items, frontIndex, tmp, 0, firstRun);
+        System.arraycopy(items, 0, tmp, firstRun, size - firstRun);
+        items = tmp;
+        frontIndex = 0;
+        backIndex = (size - 1) & (capacity - 1);
+    }
+
+    /**
+    * Removes all items from the deque.
+    */
+    public void clear(){
+        if (items.length > MIN_CAPACITY) {
+            items = new int[MIN_CAPACITY];
+        }
+        frontIndex = 0;
+        backIndex = items.length - 1;
+        size = 0;
+    }
+
+    /**
+    * Returns deque as a String.
+    * @return arrayString String version of the deque
+    */
+    public String toString(){
+        String arrayString;
+        if (isEmpty()){
+            arrayString = "frontIndex is: " + frontIndex + ", backIndex is: "+ backIndex + ", The array is Empty.";
+        } else {
+            arrayString = "frontIndex is: " + frontIndex + ", backIndex is: " + backIndex + ", Deque elements: ";
+            for (int i = 0; i < size; i++) {
+                arrayString = arrayString + items[(frontIndex + i) & (items.length - 1)];
+                if (i != size - 1){
+                    arrayString = arrayString + ", ";
+                }
+            }
+        }
+        return arrayString;
+    }
+}
@@ -0,0 +1,80 @@
+/***********************
+ * Frame - A single activation of a Method on the call stack.
+ * Frames only hold a reference to the shared Method and an
+ * instruction pointer, so they are the same size however long
+ * the method is.
+ * 
+ * @author Andy
+ * 
+ */
+public class Frame {
+
+  private Method gMethod;         // the method being executed
+  private int ticks;              // instruction pointer: how many times this frame has been stepped
+
+  /***************
+   * Constructor 
+   * @param mMethod the method to activate
+   */
+  public Frame(Method mMethod) {
+    gMethod = mMethod;
+    ticks = 0;
+  }
+
+  /***************
+   * Constructor - for a frame part way through its method, such as one
+   * restored from a ProgramCheckpoint
+   * @param mMethod the method being executed
+   * @param mTicks the index of the next instruction to execute
+   */
+  public Frame(Method mMethod, int mTicks) {
+    gMethod = mMethod;
+    ticks = mTicks;
+  }
+
+  /*************
+   * Starts this frame over on another method, for a tail call: the frame
+   * is reused instead of popping it and pushing a new one
+   * @param mMethod the method to activate
+   */
+  public void reenter(Method mMethod) {
+    gMethod = mMethod;
+    ticks = 0;
+  }
+
+  /*************
+   * Gets the method this frame is executing
+   * @return the method
+   */
+  public Method getMethod() { return gMethod; }
+
+  /*************
+   * Gets the name of the method this frame is executing
+   * @return the name
+   */
+  public String getName() { return gMethod.getName(); }
+
+  /*************
+   * Gets the size of this frame, in virtual bytes
+   * @return the size
+   */
+  public int getSize() { return gMethod.getSize(); }
+
+  /*************
+   * Gets the instruction pointer of this frame
+   * @return the index of the next instruction to execute
+   */
+  public int getTicks() { return ticks; }
+
+  /*************
+   * Returns whether this frame is finished executing or not
+   * @return true if finished
+   */
+  public boolean isFinished() { return ticks >= gMethod.getLength(); }
+
+  /*************
+   * Returns the next instruction to execute and advances past it
+   * @return the instruction
+   */
+  public Instruction next() { return gMethod.getInstruction(ticks++); }
+}
@@ -2,21 +2,44 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.util.ArrayList;
+import java.awt.Rectangle;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
 
 import javax.swing.JComponent;
 
 /************************
- * GraphicsComponent is the part of the SimulationComponent that 
+ * GraphicsComponent is the part of the SimulationComponent that
  * keeps track of the graphical representation of the VM memory
+ *
+ * Frames are kept in arrays from the bottom of the stack up, together with
+ * the offset of each frame's top edge, so a push or pop costs O(1) and only
+ * the frames inside the visible window are ever painted. The mouse wheel
+ * scrolls the window; with Ctrl held down it zooms. The window follows
+ * the top of the stack unless it has been scrolled away from it.
  * @author Andy
  *
  */
-public class GraphicsComponent extends JComponent {
+public class GraphicsComponent extends JComponent implements MouseWheelListener {
 
   private static final long serialVersionUID = 1L;
 
-  private ArrayList<Method> gList;
+  private static final int TOP_BUFFER = 20;
+  private static final int LEFT_BUFFER = 10;
+  private static final int ADDRESS_WIDTH = 130;
+  private static final int ADDRESS_HEIGHT = 340;
+  private static final double MIN_ZOOM = 1.0 / 4096;
+  private static final double MAX_ZOOM = 8;
+
+  private Method[] gMethods;        // frames from the bottom of the stack up
+  private long[] gEnds;             // memory offset of each frame's top edge
+  private StackSnapshot[] gNodes;   // snapshot node of each frame, if it came from setStack
+  private int gDepth;               // number of frames
+  private long gBytes;              // memory the frames use, as CallStack counts it: no gaps
+
+  private long gScroll;             // memory offset shown at the bottom of the box
+  private double gZoom = 1;         // pixels per unit of memory
+  private boolean bFollow = true;   // keep the top of the stack in view
 
   /*********
    * Constructor
@@ -25,58 +48,197 @@ public class GraphicsComponent extends JComponent {
     this.setMinimumSize(new Dimension(150, 380));
     this.setPreferredSize(new Dimension(150,380));
     this.setVisible(true);
-    gList = new ArrayList<Method>();
+    gMethods = new Method[16];
+    gEnds = new long[16];
+    gNodes = new StackSnapshot[16];
+    addMouseWheelListener(this);
   }
-  
+
   /************
-   * Overriding paintComponent method.
+   * Overriding paintComponent method. Only frames that are both inside
+   * the box and inside the clip are drawn.
    */
   public void paintComponent(Graphics mGraphics) {
     Graphics2D g2 = (Graphics2D) mGraphics;
 
-    int TOP_BUFFER = 20;
-    int LEFT_BUFFER = 10;
-    int ADDRESS_WIDTH = 130;
-    int ADDRESS_HEIGHT = 340;
-
     // "stack"
+    g2.setColor(Color.BLACK);
     g2.drawRect(LEFT_BUFFER, TOP_BUFFER, ADDRESS_WIDTH, ADDRESS_HEIGHT);
-    int counter = 0;
-    for(Method tMethod: gList) {
-      counter += tMethod.getSize();
+    if(gDepth > 0) {
+      g2.drawString(gDepth + " frames, " + gBytes + " bytes", LEFT_BUFFER, TOP_BUFFER - 6);
+    }
+
+    Rectangle tClip = g2.getClipBounds();
+    int tClipTop = tClip == null ? TOP_BUFFER : Math.max(TOP_BUFFER, tClip.y);
+    int tClipBottom = tClip == null ? TOP_BUFFER + ADDRESS_HEIGHT
+        : Math.min(TOP_BUFFER + ADDRESS_HEIGHT, tClip.y + tClip.height);
+
+    // first frame reaching into the clip, then one frame per pixel row at most
+    int i = firstEndingAbove(toOffset(tClipBottom));
+    while(i < gDepth) {
+      long tStart = gEnds[i] - gMethods[i].getSize();
+      int tTop = Math.max(toY(gEnds[i]), TOP_BUFFER + 1);
+      int tBottom = toY(tStart);
+      if(tBottom <= Math.max(tClipTop, TOP_BUFFER + 1)) { break; }
       g2.setColor(Color.RED);
-      if(ADDRESS_HEIGHT - counter < 0) {
-        System.err.println("ERROR! Stack overflow!!");
-        System.exit(1);
+      g2.fillRect(LEFT_BUFFER + 1, tTop, ADDRESS_WIDTH - 1, Math.max(1, tBottom - tTop));
+      if(tBottom - tTop >= 10) {
+        g2.setColor(Color.BLACK);
+        g2.drawString(gMethods[i].getName(), LEFT_BUFFER + 2, (tTop + tBottom) / 2);
       }
-      g2.fillRect(LEFT_BUFFER + 1, TOP_BUFFER + ADDRESS_HEIGHT - counter, ADDRESS_WIDTH - 1, tMethod.getSize());
-      
-      int vertavg = (TOP_BUFFER + ADDRESS_HEIGHT - counter) + tMethod.getSize()/2;
-      g2.setColor(Color.BLACK);
-      g2.drawString(tMethod.getName(), LEFT_BUFFER + 2, vertavg);
-      counter++;
+      // frames smaller than a pixel would all land on this row: skip them
+      i = Math.max(i + 1, firstEndingAbove(toOffset(tTop - 1)));
     }
   }
-  
+
   /**********
    * Adds a method to the 'memory' space
    * @param mMethod the method to add
    */
   public void addMethod(Method mMethod) {
-    gList.add(mMethod);
+    push(mMethod, null);
+    changedFrom(gDepth - 1);
   }
-  
+
   /************
    * Removes a method from the 'memory' space. A method passed to this will only be removed
    * if it is on the top of the stack
    * @param mMethod the method to remove
    */
   public void removeMethod(Method mMethod) {
-    if(gList.get(gList.size()-1).equals(mMethod)) { gList.remove(mMethod); }
+    if(gDepth > 0 && gMethods[gDepth - 1].equals(mMethod)) {
+      gDepth--;
+      gBytes -= gMethods[gDepth].getSize();
+      gNodes[gDepth] = null;
+      gMethods[gDepth] = null;
+      changedFrom(gDepth);
+    }
+  }
+
+  /**********
+   * Shows the given call stack, replacing whatever was shown. Only the
+   * frames above the part it shares with the stack shown before are
+   * updated, so following a running program costs O(pushes + pops).
+   * @param mTop the stack, or null for an empty one
+   */
+  public void setStack(StackSnapshot mTop) {
+    // walk down to the deepest frame both stacks share
+    int tNewDepth = StackSnapshot.depth(mTop);
+    StackSnapshot tNode = mTop;
+    while(tNode != null && (tNode.getDepth() > gDepth || gNodes[tNode.getDepth() - 1] != tNode)) {
+      tNode = tNode.getBelow();
+    }
+    int tCommon = StackSnapshot.depth(tNode);
+    if(tCommon == gDepth && tNewDepth == gDepth) { return; }
+
+    for(int i = tCommon; i < gDepth; i++) {
+      gBytes -= gMethods[i].getSize();
+      gNodes[i] = null;
+      gMethods[i] = null;
+    }
+    gDepth = tCommon;
+    ensureCapacity(tNewDepth);
+    for(tNode = mTop; tNode != null && tNode.getDepth() > tCommon; tNode = tNode.getBelow()) {
+      set(tNode.getDepth() - 1, tNode.getMethod(), tNode);
+    }
+    gDepth = tNewDepth;
+    changedFrom(tCommon);
   }
-  
+
   /**********
    * Clears the memory space
    */
-  public void clearMethods() { gList.clear(); }
+  public void clearMethods() {
+    setStack(null);
+    gScroll = 0;
+    bFollow = true;
+  }
+
+  /**********
+   * Scrolls, or zooms with Ctrl held down, around the mouse pointer
+   */
+  public void mouseWheelMoved(MouseWheelEvent mEvent) {
+    int tClicks = mEvent.getWheelRotation();
+    if(mEvent.isControlDown()) {
+      long tAnchor = toOffset(mEvent.getY());
+      gZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, gZoom * Math.pow(2, -tClicks)));
+      gScroll = tAnchor - (long) ((TOP_BUFFER + ADDRESS_HEIGHT - mEvent.getY()) / gZoom);
+    } else {
+      gScroll -= (long) (tClicks * ADDRESS_HEIGHT / 4 / gZoom);
+    }
+    gScroll = Math.max(0, Math.min(gScroll, gDepth == 0 ? 0 : gEnds[gDepth - 1]));
+    bFollow = gDepth == 0 || toY(gEnds[gDepth - 1]) >= TOP_BUFFER;
+    repaint();
+  }
+
+  private void push(Method mMethod, StackSnapshot mNode) {
+    ensureCapacity(gDepth + 1);
+    set(gDepth, mMethod, mNode);
+    gDepth++;
+  }
+
+  private void set(int mIndex, Method mMethod, StackSnapshot mNode) {
+    gMethods[mIndex] = mMethod;
+    gNodes[mIndex] = mNode;
+    gBytes += mMethod.getSize();
+    // frames are one unit apart
+    gEnds[mIndex] = (mIndex == 0 ? 0 : gEnds[mIndex - 1] + 1) + mMethod.getSize();
+  }
+
+  private void ensureCapacity(int mDepth) {
+    if(mDepth <= gMethods.length) { return; }
+    int tLength = Math.max(mDepth, gMethods.length * 2);
+    Method[] tMethods = new Method[tLength];
+    long[] tEnds = new long[tLength];
+    StackSnapshot[] tNodes = new StackSnapshot[tLength];
+    System.arraycopy(gMethods, 0, tMethods, 0, gDepth);
+    System.arraycopy(gEnds, 0, tEnds, 0, gDepth);
+    System.arraycopy(gNodes, 0, tNodes, 0, gDepth);
+    gMethods = tMethods;
+    gEnds = tEnds;
+    gNodes = tNodes;
+  }
+
+  /**********
+   * Repaints what changed when every frame from mIndex up was pushed or
+   * popped: just those rows, unless the window has to move to follow the top
+   */
+  private void changedFrom(int mIndex) {
+    long tWindow = (long) (ADDRESS_HEIGHT / gZoom);
+    long tTop = gDepth == 0 ? 0 : gEnds[gDepth - 1];
+    if(bFollow && (tTop > gScroll + tWindow || tTop < gScroll)) {
+      gScroll = Math.max(0, tTop - tWindow);
+      repaint();
+      return;
+    }
+    // the frame count at the top of the box changes too
+    repaint(0, 0, getWidth(), TOP_BUFFER);
+    long tFrom = mIndex == 0 ? 0 : gEnds[mIndex - 1];
+    int tBottom = Math.min(toY(tFrom) + 1, TOP_BUFFER + ADDRESS_HEIGHT);
+    if(tBottom > TOP_BUFFER) {
+      repaint(LEFT_BUFFER, TOP_BUFFER, ADDRESS_WIDTH + 1, tBottom - TOP_BUFFER);
+    }
+  }
+
+  /**********
+   * Gets the index of the lowest frame whose top edge is at or above mOffset
+   */
+  private int firstEndingAbove(long mOffset) {
+    int tLow = 0;
+    int tHigh = gDepth;
+    while(tLow < tHigh) {
+      int tMid = (tLow + tHigh) >>> 1;
+      if(gEnds[tMid] < mOffset) { tLow = tMid + 1; } else { tHigh = tMid; }
+    }
+    return tLow;
+  }
+
+  private int toY(long mOffset) {
+    double tY = TOP_BUFFER + ADDRESS_HEIGHT - (mOffset - gScroll) * gZoom;
+    return (int) Math.max(-1, Math.min(Integer.MAX_VALUE / 2, tY));
+  }
+
+  private long toOffset(int mY) {
+    return gScroll + (long) ((TOP_BUFFER + ADDRESS_HEIGHT - mY) / gZoom);
+  }
 }
@@ -0,0 +1,365 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.management.JMException;
+
+/*****************
+ * HeadlessSimulator - runs a program on the VM simulator without a display,
+ * as fast as the CPU allows, and reports how many steps per second it managed.
+ * Given several programs, it time-slices them with a Scheduler and reports
+ * per-program statistics.
+ *
+ * Usage: java HeadlessSimulator [-q] [-n maxSteps] [-m memory] [-tco] [-jmx] [-profile file [-sample n]] [-trace file] [-p rr|priority|srt] [-t quota] file.fakejava[@priority]...
+ *        java HeadlessSimulator [options] [-save file [-every n]] (file.fakejava | -resume file)
+ *   -q  don't echo status messages
+ *   -n  stop after this many steps (useful for programs that never finish)
+ *   -m  VM memory limit; a call that doesn't fit ends the program with a stack overflow
+ *   -tco  eliminate tail calls
+ *   -jmx  count steps, calls and stack use, publish the counts as SimulationStats
+ *         MXBeans (see them in JConsole) and print them at the end
+ *   -profile  write where the steps went to this file as collapsed stacks, for a flame graph
+ *   -sample  with -profile, sample every n steps instead of counting every one
+ *   -trace  record every event to this binary trace file, for MainWindow to replay;
+ *         with several programs, each one's trace is this name with .1, .2 ... added
+ *   -p  scheduling policy when running several programs (default rr)
+ *   -t  steps per time slice when running several programs
+ *   -save  when the run stops, write a snapshot of the program to this file
+ *   -every  with -save, also write one every n steps, in the background
+ *   -resume  carry on running the program in this snapshot file, with the
+ *         memory limit and tail-call setting it was saved with
+ *
+ * @author Andy
+ *
+ */
+public class HeadlessSimulator implements SimulationListener {
+
+  private PrintStream gOut;        // where status messages go, or null to discard them
+  private boolean gFinished;
+  private StackOverflowException gOverflow;   // how the program overflowed, if it did
+
+  /***************
+   * Constructor
+   * @param mOut the stream to echo status messages to, or null for none
+   */
+  public HeadlessSimulator(PrintStream mOut) {
+    gOut = mOut;
+  }
+
+  /***************
+   * Runs the given program until it finishes or has taken mMaxSteps steps.
+   * The program must have been created with this simulator as its listener.
+   * @param mProg the program to run
+   * @param mMaxSteps the most steps to run
+   * @return the number of steps executed
+   */
+  public long run(Program mProg, long mMaxSteps) {
+    return run(mProg, this, mMaxSteps);
+  }
+
+  /***************
+   * Runs the given program until it finishes or has taken mMaxSteps steps,
+   * reporting to a listener that passes events on to this simulator, such
+   * as a SimulationStats. The program must have been created with that listener.
+   * @param mProg the program to run
+   * @param mListener the listener to step the program with
+   * @param mMaxSteps the most steps to run
+   * @return the number of steps executed
+   */
+  public long run(Program mProg, SimulationListener mListener, long mMaxSteps) {
+    long tSteps = 0;
+    while(!mProg.isFinished() && tSteps < mMaxSteps) {
+      mProg.step(mListener);
+      tSteps++;
+    }
+    return tSteps;
+  }
+
+  /*************
+   * Returns true once the program being run has finished
+   */
+  public boolean isFinished() { return gFinished; }
+
+  /*************
+   * Gets the stack overflow that ended the program
+   * @return the overflow, or null if there was none
+   */
+  public StackOverflowException getOverflow() { return gOverflow; }
+
+  public void methodPushed(Frame mFrame) { }
+
+  public void methodPopped(Frame mFrame) { }
+
+  public void outputEmitted(Instruction mInstruction) {
+    if(gOut != null) { gOut.println(mInstruction.getMessage()); }
+  }
+
+  public void stackOverflowed(Program mProgram, StackOverflowException mError) {
+    gOverflow = mError;
+    if(gOut != null) { gOut.println(mError.getMessage()); }
+  }
+
+  public void programFinished(Program mProgram) { gFinished = true; }
+
+  public static void main(String[] args) {
+    boolean tQuiet = false;
+    long tMaxSteps = Long.MAX_VALUE;
+    long tMemory = CallStack.UNLIMITED;
+    boolean tTailCalls = false;
+    boolean tStats = false;
+    String tProfile = null;
+    int tInterval = 1;
+    String tTrace = null;
+    String tPolicy = null;
+    int tQuota = Scheduler.DEFAULT_QUOTA;
+    String tSave = null;
+    long tEvery = Long.MAX_VALUE;
+    String tResume = null;
+    List<String> tFiles = new ArrayList<String>();
+    for(int i = 0; i < args.length; i++) {
+      if(args[i].equals("-q")) { tQuiet = true; }
+      else if(args[i].equals("-n") && i + 1 < args.length) { tMaxSteps = Long.parseLong(args[++i]); }
+      else if(args[i].equals("-tco")) { tTailCalls = true; }
+      else if(args[i].equals("-jmx")) { tStats = true; }
+      else if(args[i].equals("-profile") && i + 1 < args.length) { tProfile = args[++i]; }
+      else if(args[i].equals("-sample") && i + 1 < args.length) { tInterval = Integer.parseInt(args[++i]); }
+      else if(args[i].equals("-trace") && i + 1 < args.length) { tTrace = args[++i]; }
+      else if(args[i].equals("-m") && i + 1 < args.length) { tMemory = Long.parseLong(args[++i]); }
+      else if(args[i].equals("-p") && i + 1 < args.length) { tPolicy = args[++i]; }
+      else if(args[i].equals("-t") && i + 1 < args.length) { tQuota = Integer.parseInt(args[++i]); }
+      else if(args[i].equals("-save") && i + 1 < args.length) { tSave = args[++i]; }
+      else if(args[i].equals("-every") && i + 1 < args.length) { tEvery = Long.parseLong(args[++i]); }
+      else if(args[i].equals("-resume") && i + 1 < args.length) { tResume = args[++i]; }
+      else { tFiles.add(args[i]); }
+    }
+    boolean tOne = tPolicy == null && tFiles.size() + (tResume == null ? 0 : 1) == 1;
+    if((tFiles.isEmpty() && tResume == null) || (tPolicy != null && Scheduler.policy(tPolicy) == null)
+        || ((tSave != null || tResume != null) && !tOne) || tEvery <= 0) {
+      System.err.println("Usage: java HeadlessSimulator [-q] [-n maxSteps] [-m memory] [-tco] [-jmx] [-profile file [-sample n]] [-trace file] [-p rr|priority|srt] [-t quota] file.fakejava[@priority]...");
+      System.err.println("       java HeadlessSimulator [options] [-save file [-every n]] (file.fakejava | -resume file)");
+      System.exit(2);
+    }
+    ProgramSnapshot tSnapshot = null;
+    if(tResume != null) {
+      try {
+        tSnapshot = ProgramSnapshot.read(new File(tResume));
+      } catch(IOException e) {
+        System.err.println("Error: snapshot " + tResume + " could not be read: " + e.getMessage());
+        System.exit(1);
+      }
+      tFiles.add(tSnapshot.getImage().getName());
+    }
+
+    PrintStream tOut = tQuiet ? null
+        : new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+    List<SimulationProfiler> tProfilers = tProfile == null ? null : new ArrayList<SimulationProfiler>();
+    List<TraceRecorder> tRecorders = tTrace == null ? null : new ArrayList<TraceRecorder>();
+    if(tOne) {
+      runOne(tFiles.get(0), tOut, tMaxSteps, tMemory, tTailCalls, tStats, tProfilers, tInterval, tRecorders, tTrace,
+          tSnapshot, tSave == null ? null : new File(tSave), tEvery);
+    } else {
+      runScheduled(tFiles, tOut, tMaxSteps, tMemory, tTailCalls, tStats, tProfilers, tInterval, tRecorders, tTrace,
+          Scheduler.policy(tPolicy == null ? "rr" : tPolicy), tQuota);
+    }
+    if(tProfilers != null) { writeProfiles(tProfile, tProfilers, tFiles.size() > 1); }
+    if(tRecorders != null) {
+      for(TraceRecorder tRecorder: tRecorders) {
+        try {
+          tRecorder.close();
+        } catch(IOException e) {
+          System.err.println("Error: trace could not be written: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  /*************
+   * Writes the profiles in collapsed-stack form; with several programs,
+   * each one's stacks start with its name
+   */
+  private static void writeProfiles(String mFile, List<SimulationProfiler> mProfilers, boolean mPrefixed) {
+    try(PrintStream tOut = new PrintStream(new BufferedOutputStream(new FileOutputStream(mFile), 1 << 16), false)) {
+      for(SimulationProfiler tProfiler: mProfilers) {
+        tProfiler.writeFolded(tOut, mPrefixed ? tProfiler.getName() : null);
+      }
+    } catch(IOException e) {
+      System.err.println("Error: profile " + mFile + " could not be written!");
+    }
+  }
+
+  private static void runOne(String mFile, PrintStream mOut, long mMaxSteps, long mMemory, boolean mTailCalls,
+      boolean mStats, List<SimulationProfiler> mProfilers, int mInterval, List<TraceRecorder> mRecorders,
+      String mTrace, ProgramSnapshot mResume, File mSave, long mEvery) {
+    HeadlessSimulator tSim = new HeadlessSimulator(mOut);
+    SimulationStats tStats = mStats ? watch(tSim, mFile) : null;
+    SimulationListener tListener = profile(tStats != null ? tStats : tSim, mFile, mProfilers, mInterval);
+    tListener = record(tListener, mFile, mRecorders, mTrace);
+    // periodic snapshots share frames with the history's checkpoints, so they don't hold up deep runs
+    ProgramHistory tHistory = mEvery != Long.MAX_VALUE ? new ProgramHistory(tListener) : null;
+    if(tHistory != null) { tListener = tHistory; }
+    Program tProg = mResume != null ? mResume.resume(tListener) : load(mFile, tListener, mMemory, mTailCalls);
+    long tStart = System.nanoTime();
+    long tSteps = mSave == null ? tSim.run(tProg, tListener, mMaxSteps)
+        : runSaving(tSim, tProg, tListener, tHistory, mMaxSteps, mSave, mEvery);
+    long tElapsed = System.nanoTime() - tStart;
+    if(mOut != null) { mOut.flush(); }
+    System.err.println(tProg.getName() + ": " + tSteps + " steps in " + (tElapsed / 1000000) + " ms ("
+        + (long) (tSteps * 1e9 / Math.max(tElapsed, 1)) + " steps/sec)"
+        + (tSim.getOverflow() != null ? ", stopped by a stack overflow"
+            : tSim.isFinished() ? "" : ", stopped before finishing"));
+    if(tStats != null) {
+      tStats.publish();
+      System.err.println(tStats);
+    }
+  }
+
+  private static void runScheduled(List<String> mFiles, PrintStream mOut, long mMaxSteps, long mMemory,
+      boolean mTailCalls, boolean mStats, List<SimulationProfiler> mProfilers, int mInterval,
+      List<TraceRecorder> mRecorders, String mTrace, SchedulingPolicy mPolicy, int mQuota) {
+    Scheduler tScheduler = new Scheduler(mPolicy, mQuota);
+    List<SimulationStats> tStats = new ArrayList<SimulationStats>();
+    for(String tSpec: mFiles) {
+      int tAt = tSpec.lastIndexOf('@');
+      String tFile = tAt < 0 ? tSpec : tSpec.substring(0, tAt);
+      int tPriority = tAt < 0 ? 0 : Integer.parseInt(tSpec.substring(tAt + 1));
+      HeadlessSimulator tSim = new HeadlessSimulator(mOut);
+      SimulationListener tListener = tSim;
+      if(mStats) {
+        SimulationStats tWatcher = watch(tSim, tFile);
+        tStats.add(tWatcher);
+        tListener = tWatcher;
+      }
+      tListener = profile(tListener, tFile, mProfilers, mInterval);
+      tListener = record(tListener, tFile, mRecorders, mTrace == null ? null : mTrace + "." + (mRecorders.size() + 1));
+      tScheduler.add(load(tFile, tListener, mMemory, mTailCalls), tListener, tPriority);
+    }
+    tScheduler.run(mMaxSteps);
+    if(mOut != null) { mOut.flush(); }
+    System.err.print(tScheduler.report());
+    for(SimulationStats tWatcher: tStats) {
+      tWatcher.publish();
+      System.err.println(tWatcher);
+    }
+  }
+
+  /*************
+   * Runs the program like run(), writing a snapshot of it to mSave when it
+   * stops. Given a history to step it with (mListener), also writes one every mEvery
+   * steps, in the background while the run goes on; one isn't taken while
+   * the last is still being written.
+   * @return the number of steps executed
+   */
+  private static long runSaving(HeadlessSimulator mSim, Program mProg, SimulationListener mListener,
+      ProgramHistory mHistory, long mMaxSteps, File mSave, long mEvery) {
+    long tSteps = 0;
+    long tPause = 0;      // longest a snapshot held the run up, in nanoseconds
+    Future<File> tWrite = null;
+    if(mHistory == null) {
+      tSteps = mSim.run(mProg, mListener, mMaxSteps);
+    } else {
+      mHistory.setProgram(mProg);
+      long tNext = mEvery;
+      while(!mProg.isFinished() && tSteps < mMaxSteps) {
+        if(tSteps >= tNext && (tWrite == null || tWrite.isDone())) {
+          await(tWrite);
+          long tStart = System.nanoTime();
+          tWrite = ProgramSnapshot.take(mProg, mHistory).writeInBackground(mSave);
+          tPause = Math.max(tPause, System.nanoTime() - tStart);
+          tNext = tSteps + mEvery;
+        }
+        mHistory.step();
+        tSteps++;
+      }
+    }
+    await(tWrite);
+    try {
+      ProgramSnapshot tLast = mHistory == null ? ProgramSnapshot.take(mProg) : ProgramSnapshot.take(mProg, mHistory);
+      tLast.write(mSave);
+      System.err.println("Snapshot at step " + mProg.getSteps() + " written to " + mSave
+          + (tPause > 0 ? " (longest pause for a snapshot " + (tPause / 1000) + " us)" : ""));
+    } catch(IOException e) {
+      System.err.println("Error: snapshot " + mSave + " could not be written: " + e.getMessage());
+    }
+    return tSteps;
+  }
+
+  /*************
+   * Waits for a snapshot being written in the background, reporting it if
+   * it failed
+   */
+  private static void await(Future<File> mWrite) {
+    if(mWrite == null) { return; }
+    try {
+      mWrite.get();
+    } catch(ExecutionException e) {
+      System.err.println("Error: snapshot could not be written: " + e.getCause().getMessage());
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /*************
+   * Creates SimulationStats in front of the given simulator and registers
+   * them over JMX
+   */
+  private static SimulationStats watch(HeadlessSimulator mSim, String mFile) {
+    SimulationStats tStats = new SimulationStats(mSim, new File(mFile).getName());
+    try {
+      tStats.register();
+    } catch(JMException e) {
+      System.err.println("Could not register the statistics MXBean: " + e.getMessage());
+    }
+    return tStats;
+  }
+
+  /*************
+   * Puts a SimulationProfiler in front of the given listener if profiling
+   * is on, adding it to mProfilers
+   */
+  private static SimulationListener profile(SimulationListener mListener, String mFile,
+      List<SimulationProfiler> mProfilers, int mInterval) {
+    if(mProfilers == null) { return mListener; }
+    SimulationProfiler tProfiler = new SimulationProfiler(mListener, new File(mFile).getName(), mInterval);
+    mProfilers.add(tProfiler);
+    return tProfiler;
+  }
+
+  /*************
+   * Puts a TraceRecorder writing to mTrace in front of the given listener
+   * if recording is on, adding it to mRecorders
+   */
+  private static SimulationListener record(SimulationListener mListener, String mFile,
+      List<TraceRecorder> mRecorders, String mTrace) {
+    if(mRecorders == null) { return mListener; }
+    try {
+      TraceRecorder tRecorder = new TraceRecorder(mListener, new File(mTrace), new File(mFile).getName());
+      mRecorders.add(tRecorder);
+      return tRecorder;
+    } catch(IOException e) {
+      System.err.println("Error: trace " + mTrace + " could not be created!");
+      System.exit(1);
+      return null;
+    }
+  }
+
+  private static Program load(String mFile, SimulationListener mListener, long mMemory, boolean mTailCalls) {
+    try {
+      Program tProg = new Program(new File(mFile), mListener);
+      tProg.setTailCallElimination(mTailCalls);
+      if(mMemory != CallStack.UNLIMITED) { tProg.setMemoryLimit(mMemory); }
+      return tProg;
+    } catch(SyntaxErrorException e) {
+      System.err.println("Syntax error in " + mFile + ":");
+      System.err.println(e.getMessage());
+      System.exit(1);
+      return null;
+    }
+  }
+}
@@ -0,0 +1,124 @@
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/***********************
+ * Instruction - A single pre-decoded line of a Method body.
+ * Lines are decoded once, when the program is loaded, so that
+ * executing a step never has to run a regular expression or
+ * build a status string.
+ *
+ * @author Andy
+ *
+ */
+public class Instruction {
+
+  public static final int NOP = 0;      // blank, comment-only or brace-only line
+  public static final int OTHER = 1;    // any other statement, shown as-is
+  public static final int PRINT = 2;    // print "..." statement
+  public static final int CALL = 3;     // call to a method of the same program
+
+  private static final Pattern PRINT_PATTERN = Pattern.compile("\\s*print\\s*\"(.*)\".*");
+  private static final Pattern CALL_PATTERN = Pattern.compile("\\s*(\\S*)\\s*\\(.*?\\).*");
+
+  private int gKind;               // one of NOP, OTHER, PRINT or CALL
+  private String gText;            // the print literal, or the trimmed line
+  private String gMessage;         // status message shown when this executes
+  private String gCalleeName;      // name of the called method, if the line looks like a call
+  private Method gCallee;          // the resolved callee, or null
+  private boolean bTail;           // a CALL with nothing but NOPs after it
+
+  /***************
+   * Constructor - decodes the given line
+   * @param mOwner name of the method this line belongs to
+   * @param mLine the raw text of the line
+   */
+  public Instruction(String mOwner, String mLine) {
+    // the patterns are only tried on lines that could possibly match them
+    String tTrimmed = mLine.trim();
+    Matcher tM1 = tTrimmed.startsWith("print") ? PRINT_PATTERN.matcher(mLine) : null;
+    if(tM1 != null && tM1.matches()) {
+      gKind = PRINT;
+      gText = tM1.group(1);
+      gMessage = mOwner + " output : " + gText;
+    } else {
+      gText = tTrimmed;
+      gKind = isBlank(gText) ? NOP : OTHER;
+      gMessage = mOwner + " : " + gText;
+      if(mLine.indexOf('(') >= 0) {
+        Matcher tM2 = CALL_PATTERN.matcher(mLine);
+        if(tM2.matches()) {
+          gCalleeName = tM2.group(1);
+        }
+      }
+    }
+  }
+
+  /*************
+   * Resolves the callee of this instruction against the program's methods.
+   * Lines that only look like calls (e.g. to library methods) stay OTHER.
+   * @param mIndex the program's methods, by name
+   */
+  public void link(Map<String, Method> mIndex) {
+    if(gCalleeName == null) { return; }
+    gCallee = mIndex.get(gCalleeName);
+    if(gCallee != null) { gKind = CALL; }
+  }
+
+  /*************
+   * Marks this instruction as the last thing its method does, if it is
+   * a CALL. Called by Method.compile().
+   */
+  public void markTail() { bTail = gKind == CALL; }
+
+  /*************
+   * Returns true if this is a CALL in tail position: once the callee
+   * returns, the caller has nothing left to do but NOPs
+   */
+  public boolean isTailCall() { return bTail; }
+
+  /*************
+   * Gets the kind of this instruction
+   * @return one of NOP, OTHER, PRINT or CALL
+   */
+  public int getKind() { return gKind; }
+
+  /*************
+   * Gets the print literal for PRINT instructions, or the trimmed line otherwise
+   * @return the text
+   */
+  public String getText() { return gText; }
+
+  /*************
+   * Gets a line of source that decodes to this instruction again, with the
+   * same kind, text, message and callee: the trimmed line, or a print
+   * statement rebuilt from its literal
+   * @return the line
+   */
+  public String getSource() { return gKind == PRINT ? "print \"" + gText + "\"" : gText; }
+
+  /*************
+   * Gets the status message to display when this instruction executes
+   * @return the message
+   */
+  public String getMessage() { return gMessage; }
+
+  /*************
+   * Gets the method called by this instruction
+   * @return the callee, or null if this is not a CALL
+   */
+  public Method getCallee() { return gCallee; }
+
+  /*************
+   * Returns true if the line holds no code: only whitespace, braces or a comment
+   */
+  private static boolean isBlank(String mLine) {
+    for(int i=0; i<mLine.length(); i++) {
+      char tChar = mLine.charAt(i);
+      if(tChar == '/' && i + 1 < mLine.length() && mLine.charAt(i + 1) == '/') { return true; }
+      if(tChar != '{' && tChar != '}' && !Character.isWhitespace(tChar)) { return false; }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,172 @@
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*****************
+ * LoaderBenchmark - compares ProgramLexer against the old two-pass loader
+ * (one Scanner pass for the syntax check into a String[], then a second
+ * Scanner pass that compiled the def pattern for every line) on large
+ * programs written by ProgramGenerator.
+ *
+ * Usage: java LoaderBenchmark [methods...]
+ *   each argument is the number of methods in one generated program
+ *   (default: 1000 10000 100000)
+ *
+ * @author Andy
+ *
+ */
+public class LoaderBenchmark {
+
+  private static final int ROUNDS = 5;
+
+  public static void main(String[] args) throws Exception {
+    int[] tSizes = { 1000, 10000, 100000 };
+    if(args.length > 0) {
+      tSizes = new int[args.length];
+      for(int i = 0; i < args.length; i++) { tSizes[i] = Integer.parseInt(args[i]); }
+    }
+    for(int tMethods: tSizes) {
+      File tFile = File.createTempFile("generated-", ".fakejava");
+      tFile.deleteOnExit();
+      ProgramGenerator.generate(tFile, tMethods);
+      double tMb = tFile.length() / (1024.0 * 1024.0);
+
+      // warm up both loaders before timing them
+      legacyLoad(tFile);
+      streamingLoad(tFile);
+
+      long tLegacy = Long.MAX_VALUE;
+      long tStreaming = Long.MAX_VALUE;
+      for(int r = 0; r < ROUNDS; r++) {
+        long tStart = System.nanoTime();
+        int tLegacyCount = legacyLoad(tFile);
+        tLegacy = Math.min(tLegacy, System.nanoTime() - tStart);
+
+        tStart = System.nanoTime();
+        int tStreamingCount = streamingLoad(tFile);
+        tStreaming = Math.min(tStreaming, System.nanoTime() - tStart);
+
+        if(tLegacyCount != tStreamingCount) {
+          System.err.println("Loaders disagree: " + tLegacyCount + " vs " + tStreamingCount + " methods");
+        }
+      }
+      System.out.printf("%7d methods, %7.2f MB: legacy %8.1f ms (%6.1f MB/s), streaming %8.1f ms (%6.1f MB/s), %.1fx%n",
+          tMethods, tMb, tLegacy / 1e6, tMb / (tLegacy / 1e9), tStreaming / 1e6, tMb / (tStreaming / 1e9),
+          (double) tLegacy / tStreaming);
+    }
+  }
+
+  private static int streamingLoad(File mFile) throws Exception {
+    try (Reader tReader = new FileReader(mFile)) {
+      ProgramLexer tLexer = new ProgramLexer();
+      tLexer.lex(tReader);
+      return tLexer.getMethodList().size();
+    }
+  }
+
+  private static int legacyLoad(File mFile) throws Exception {
+    Scanner s = new Scanner(mFile);
+    legacySyntaxCheck(s);
+    s.close();
+    s = new Scanner(mFile);
+    List<Method> tMethods = legacyLoadMethodList(s);
+    s.close();
+    return tMethods.size();
+  }
+
+  /*************
+   * The syntax check Program used before ProgramLexer, kept for comparison
+   */
+  private static boolean legacySyntaxCheck(Scanner mScanner) throws SyntaxErrorException {
+    CircularCharArrayDeque openDelimiterDeque = new CircularCharArrayDeque();
+    String[] lines = new String[3];
+    int lineCount = 0;
+    while (mScanner.hasNext()) {
+      lines = legacyEnsureCapacity(lines, lineCount);
+      lines[lineCount] = mScanner.nextLine();
+      lineCount++;
+    }
+    for (int line = 0; line < lineCount; line++) {
+      String expression = lines[line];
+      for (int charIndex = 0; charIndex < expression.length(); charIndex++) {
+        char nextCharacter = expression.charAt(charIndex);
+        if (nextCharacter == '/' && charIndex + 1 < expression.length() && expression.charAt(charIndex + 1) == '/') {
+          break;
+        }
+        switch (nextCharacter) {
+          case '(': case '[': case '{':
+            openDelimiterDeque.addFront(nextCharacter);
+            break;
+          case ')': case ']': case '}':
+            if (openDelimiterDeque.isEmpty()) {
+              throw new SyntaxErrorException("Error: unmatched closed delimiter: " + nextCharacter + " at line " + (line + 1));
+            }
+            char openDelimiter = openDelimiterDeque.removeFront();
+            if (!((openDelimiter == '(' && nextCharacter == ')') || (openDelimiter == '[' && nextCharacter == ']')
+                || (openDelimiter == '{' && nextCharacter == '}'))) {
+              throw new SyntaxErrorException("Error: delimiters not paired: " + openDelimiter + " and " + nextCharacter + " at line " + (line + 1));
+            }
+            break;
+          default: break;
+        }
+      }
+    }
+    if (!openDelimiterDeque.isEmpty()) {
+      throw new SyntaxErrorException("Error: delimiter not closed at line " + lineCount);
+    }
+    return true;
+  }
+
+  private static String[] legacyEnsureCapacity(String[] lines, int index) {
+    String[] newLines = lines;
+    int capacity = lines.length - 1;
+    if (index >= capacity) {
+      newLines = new String[2 * capacity];
+      for (int i = 0; i < capacity; i++) {
+        newLines[i] = lines[i];
+      }
+    }
+    return newLines;
+  }
+
+  /*************
+   * The method loader Program used before ProgramLexer, kept for comparison
+   */
+  private static List<Method> legacyLoadMethodList(Scanner mScanner) {
+    List<Method> tMethodList = new LinkedList<Method>();
+    while(mScanner.hasNextLine()) {
+      String tLine = mScanner.nextLine();
+      Pattern tPattern = Pattern.compile("def .*?(\\w*)\\(.*?\\)\\s*(\\{?)");
+      Matcher tM1 = tPattern.matcher(tLine);
+      if(tM1.matches()) {
+        Method tMethod = new Method(tM1.group(1));
+        int bracketcounter = tM1.group(2).equals("{")?1:0;
+        while(bracketcounter > 0 && mScanner.hasNextLine()) {
+          tLine = mScanner.nextLine();
+          tMethod.addLine(tLine);
+          char tPrevChar = ' ';
+          for(int i=0; i<tLine.length(); i++) {
+            char tChar = tLine.charAt(i);
+            if(tChar == '/' && tPrevChar == '/') { i = tLine.length(); }
+            else if(tChar == '{') { bracketcounter++; }
+            else if(tChar == '}') { bracketcounter--; }
+            tPrevChar = tChar;
+          }
+        }
+        tMethodList.add(tMethod);
+      }
+    }
+    Map<String, Method> tIndex = new HashMap<String, Method>();
+    for(Method tMethod: tMethodList) { tIndex.putIfAbsent(tMethod.getName(), tMethod); }
+    for(Method tMethod: tMethodList) { tMethod.compile(tIndex); }
+    return tMethodList;
+  }
+}
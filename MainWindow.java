@@ -1,10 +1,17 @@
 import java.awt.BorderLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
 
 import javax.swing.JButton;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JSlider;
 import javax.swing.JToggleButton;
 import javax.swing.JToolBar;
 import javax.swing.Timer;
@@ -19,22 +26,60 @@ import javax.swing.event.ChangeListener;
 public class MainWindow extends JFrame 
 implements ActionListener, ChangeListener {
 
-  public static void main(String[] args) {
+  /*************
+   * Starts the simulator.
+   * Usage: java MainWindow [-statuslines n] [-statusspill file] [-memory n] [-jmx on] [-history off] [-replay file]
+   *   -statuslines  how many status messages to keep on screen
+   *   -statusspill  file to append older status messages to
+   *   -memory       VM memory limit (default 340)
+   *   -jmx          "on" to publish each program's SimulationStats over JMX
+   *   -history      "off" to stop keeping checkpoints for stepping back
+   *   -replay       load this trace, recorded by HeadlessSimulator -trace, to play back
+   */
+  public static void main(String[] args) throws IOException {
     MainWindow tWindow = new MainWindow();
+    for(int i = 0; i + 1 < args.length; i += 2) {
+      if(args[i].equals("-statuslines")) {
+        tWindow.getSimComponent().setStatusLogCapacity(Integer.parseInt(args[i + 1]));
+      } else if(args[i].equals("-statusspill")) {
+        tWindow.getSimComponent().setStatusSpillFile(new File(args[i + 1]));
+      } else if(args[i].equals("-memory")) {
+        tWindow.getSimComponent().setMemoryLimit(Long.parseLong(args[i + 1]));
+      } else if(args[i].equals("-jmx")) {
+        tWindow.getSimComponent().setStatsEnabled(args[i + 1].equals("on"));
+      } else if(args[i].equals("-history")) {
+        tWindow.getSimComponent().setHistoryEnabled(!args[i + 1].equals("off"));
+      } else if(args[i].equals("-replay")) {
+        tWindow.getSimComponent().loadTrace(new File(args[i + 1]));
+      }
+    }
     tWindow.setVisible(true);
   }
   
   private static final long serialVersionUID = 1L;
+  private static final int FRAME_RATE = 60;     // redraws per second while running
   private JToolBar gToolBar;
   private SimulationComponent gSimComp;
-  private Timer gRunTimer;
+  private Timer gFrameTimer;
   private JButton gRunButton;
+  private JSlider gSpeedSlider;
+  private JLabel gSpeedLabel;
+  private JToggleButton gTurboButton;
+  private JLabel gRateLabel;
+
+  // speed settings, slowest first: milliseconds per tick and steps per tick
+  private static final int[] SPEED_INTERVALS = { 250, 100, 40, 16, 16, 16, 16 };
+  private static final int[] SPEED_STEPS = { 1, 1, 1, 1, 10, 100, 1000 };
 
   /***************
    * Constructor sets up the basics for the frame and application
    */
   public MainWindow() {
     setDefaultCloseOperation(EXIT_ON_CLOSE);
+    // listeners hear of the close before the frame exits
+    addWindowListener(new WindowAdapter() {
+      public void windowClosing(WindowEvent mEvent) { gSimComp.closeStatusSpill(); }
+    });
 
     // set title
     setTitle("Virtual Machine Simulator");
@@ -48,8 +93,8 @@ implements ActionListener, ChangeListener {
     // add tool bar
     this.add(getToolBar(), BorderLayout.NORTH);
 
-    // set up the timer
-    gRunTimer = new Timer(250, new TimerTranslator(this, "step"));
+    // set up the timer: the program runs on its own thread, this just redraws
+    gFrameTimer = new Timer(1000 / FRAME_RATE, new TimerTranslator(this, "frame"));
 
     pack();
   }
@@ -88,9 +133,49 @@ implements ActionListener, ChangeListener {
 
       // Run button
       gToolBar.add(getRunButton());
+
+      // Step buttons: one step forward or back, while stopped
+      JButton step = new JButton("Step");
+      step.setActionCommand("step");
+      step.addActionListener(this);
+      gToolBar.add(step);
+
+      JButton back = new JButton("Step back");
+      back.setActionCommand("back");
+      back.addActionListener(this);
+      gToolBar.add(back);
+
+      // Seek button: jump to a step of a trace being played back
+      JButton seek = new JButton("Go to step");
+      seek.setActionCommand("seek");
+      seek.addActionListener(this);
+      gToolBar.add(seek);
       
       gToolBar.add(new JToolBar.Separator());
 
+      // Speed control
+      gToolBar.add(new JLabel("Speed "));
+      gSpeedSlider = new JSlider(0, SPEED_STEPS.length - 1, 0);
+      gSpeedSlider.setSnapToTicks(true);
+      gSpeedSlider.addChangeListener(this);
+      gToolBar.add(gSpeedSlider);
+      gSpeedLabel = new JLabel();
+      gToolBar.add(gSpeedLabel);
+      onSpeedChanged();
+
+      // Turbo button: run to completion as fast as possible
+      gTurboButton = new JToggleButton("Turbo");
+      gTurboButton.setActionCommand("turbo");
+      gTurboButton.addActionListener(this);
+      gToolBar.add(gTurboButton);
+
+      gToolBar.add(new JToolBar.Separator());
+
+      gRateLabel = new JLabel("0 steps/sec");
+      gToolBar.add(gRateLabel);
+
+      gToolBar.add(new JToolBar.Separator());
+
       // Quit button
       JButton quit = new JButton("Quit");
       quit.setActionCommand("quit");
@@ -108,13 +193,26 @@ implements ActionListener, ChangeListener {
     if(tCommand.equals("load")) {
       openFile();
     } else if (tCommand.equals("quit")) {
+      gSimComp.closeStatusSpill();
       System.exit(0);
     } else if (tCommand.equals("run")) {
         gSimComp.reset();
-        gRunTimer.start();
+        gSimComp.start();
+        gFrameTimer.start();
     } else if (tCommand.equals("step")) {
+      gSimComp.halt();
       gSimComp.step();
-      if(!gSimComp.isProgramRunning()) { gRunTimer.stop(); }
+    } else if (tCommand.equals("back")) {
+      gSimComp.stepBack();
+    } else if (tCommand.equals("seek")) {
+      seekTrace();
+    } else if (tCommand.equals("turbo")) {
+      gSimComp.setTurbo(gTurboButton.isSelected());
+      gSpeedSlider.setEnabled(!gTurboButton.isSelected());
+    } else if (tCommand.equals("frame")) {
+      gSimComp.refresh();
+      gRateLabel.setText(gSimComp.getStepsPerSecond() + " steps/sec");
+      if(!gSimComp.isProgramRunning()) { gFrameTimer.stop(); }
     }
   }
 
@@ -124,7 +222,32 @@ implements ActionListener, ChangeListener {
   private void openFile() {
     JFileChooser c = new JFileChooser(System.getProperty("user.dir", "~"));
     if (c.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-      getSimComponent().addProgram(c.getSelectedFile());
+      File tFile = c.getSelectedFile();
+      if(TraceReplayer.isTrace(tFile)) {
+        getSimComponent().loadTrace(tFile);
+      } else {
+        getSimComponent().addProgram(tFile);
+      }
+    }
+  }
+
+  /**
+   * Ask for a step and move playback of the loaded trace there.
+   */
+  private void seekTrace() {
+    long tTotal = gSimComp.getTraceSteps();
+    if(tTotal < 0) {
+      JOptionPane.showMessageDialog(this, "Load a trace to go to a step of it.");
+      return;
+    }
+    String tAnswer = JOptionPane.showInputDialog(this, "Go to step (0 to " + tTotal + "):");
+    if(tAnswer == null) { return; }
+    try {
+      gSimComp.halt();
+      gSimComp.seek(Long.parseLong(tAnswer.trim()));
+      gRateLabel.setText("0 steps/sec");
+    } catch (NumberFormatException e) {
+      JOptionPane.showMessageDialog(this, tAnswer + " is not a step number.");
     }
   }
 
@@ -156,16 +279,29 @@ implements ActionListener, ChangeListener {
    */
   private void onRunToggled() {
     if (gRunButton.isSelected()) {
-      gRunTimer.start();
+      gSimComp.start();
+      gFrameTimer.start();
     } else {
-      gRunTimer.stop();
+      gSimComp.halt();
     }
   }
   
 
+  /******************
+   * Deal with the speed slider being moved.
+   */
+  private void onSpeedChanged() {
+    int tSpeed = gSpeedSlider.getValue();
+    int tSteps = SPEED_STEPS[tSpeed];
+    gSpeedLabel.setText(" " + tSteps + (tSteps == 1 ? " step / " : " steps / ") + SPEED_INTERVALS[tSpeed] + " ms ");
+    getSimComponent().setSpeed(SPEED_INTERVALS[tSpeed], tSteps);
+  }
+
   public void stateChanged(ChangeEvent e) {
     if(gRunButton == e.getSource()) {
       onRunToggled();
+    } else if(gSpeedSlider == e.getSource()) {
+      onSpeedChanged();
     }
   }
 }
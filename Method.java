@@ -1,51 +1,47 @@
 import java.util.LinkedList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 
 /***********************
  * Method - A class to represent a Java method within 
- * VM simulator
+ * VM simulator. A Method is only a definition: it is shared by
+ * every call to it, and each call runs in its own Frame.
  * 
  * @author Andy
  * 
  */
 public class Method {
 
-  private Deque<Method> callStack;
   private String name;             // the name of this Method
   private int gSize;              // size of this method (in bytes)
-  private int ticks;              // counter to check how many times this method has had step() called.
   private List<String> lineList;        // list of text lines in this method
-  private Program gParent;          // program that this method belongs to
+  private Instruction[] gCode;      // lines of this method, decoded by compile()
+  private int gIndex;               // position in the program's method list
 
   /***************
    * Constructor 
    * @param mName This method's name
-   * @param mProg The program this method belongs to
    */
-  public Method(String mName, Program mProg) {
-    gParent = mProg;
+  public Method(String mName) {
     name = mName;
     gSize = 16;
     lineList = new LinkedList<String>();
-    ticks = 0;
+    gCode = new Instruction[0];
   }
   
-  /*************
-   * copy returns a copy of this method, usually used to run separate 
-   * instances of methods
-   * @return the copy
+  /***************
+   * Constructor for a method known only by its name and size, such as
+   * one read back from a trace. It has no instructions.
+   * @param mName This method's name
+   * @param mSize its size, in virtual bytes
    */
-  public Method copy() {
-    Method ret = new Method(this.name, this.gParent);
-    ret.gSize = gSize;
-    ret.ticks = 0;
-    ret.lineList.addAll(this.lineList);
-    return ret;
+  public Method(String mName, int mSize) {
+    this(mName);
+    gSize = mSize;
+    lineList = null;
   }
-  
+
   /*************
    * Gets the size of this method, in virtual bytes.
    * Size is related to number of lines in the method.
@@ -59,6 +55,20 @@ public class Method {
    */
   public String getName() { return name; }
   
+  /*************
+   * Gets the position of this method in its program's method list, so
+   * per-method data can be kept in arrays rather than maps
+   * @return the index; 0 for main
+   */
+  public int getIndex() { return gIndex; }
+
+  /*************
+   * Sets the position of this method in its program's method list.
+   * Called by ProgramImage.
+   * @param mIndex the index
+   */
+  public void setIndex(int mIndex) { gIndex = mIndex; }
+
   /*************
    * Adds the given line to this method
    * usually used when constructing methods
@@ -67,44 +77,37 @@ public class Method {
   public void addLine(String mLine) { lineList.add(mLine); gSize += 4; }
   
   /*************
-   * Returns whether this method is finished executing or not
-   * @return true if finished
+   * Gets the number of instructions in this method
+   * @return the length
    */
-  public boolean isFinished() { return ticks >= lineList.size(); }
-  
+  public int getLength() { return gCode.length; }
+
   /*************
-   * Sets the call stack that this method uses
-   * @param the call stack to use
+   * Gets one decoded instruction of this method
+   * @param mIndex the instruction pointer
+   * @return the instruction
    */
-  public void setStack(Deque<Method> mStack) { callStack = mStack; }
-  
+  public Instruction getInstruction(int mIndex) { return gCode[mIndex]; }
+
   /*************
-   * Executes one step of this method, using the given SimulationComponent to 
-   * display things
-   * @param mComp the SimulationComponent in which to display
+   * Decodes the lines of this method into instructions. Called by the
+   * Program once every method has been loaded, so calls can be resolved.
+   * The method must not be changed afterwards, and its raw lines are
+   * dropped to save memory on large programs.
+   * @param mIndex the program's methods, by name
    */
-  public void step(SimulationComponent mComp) {
-    String tLine = lineList.get(ticks);
-    tick();
-    Pattern tPat1 = Pattern.compile("\\s*print\\s*\"(.*)\".*");
-    Matcher tM1 = tPat1.matcher(tLine);
-    if(tM1.matches()) {
-      mComp.addStatusMessage(name + " output : " + tM1.group(1));
-    } else {
-      mComp.addStatusMessage(name + " : " + tLine.trim());
-    }
-    Pattern tPat2 = Pattern.compile("\\s*(\\S*)\\s*\\(.*?\\).*");
-    Matcher tM2 = tPat2.matcher(tLine);
-    if(tM2.matches()) {
-      Method m = gParent.getMethod(tM2.group(1));
-      if(m != null && callStack != null) {
-        callStack.addFront(m);
-      }
-    }
-    if(ticks > lineList.size()) {
-      System.err.println(name + " should have exited by now...");
+  public void compile(Map<String, Method> mIndex) {
+    Instruction[] tCode = new Instruction[lineList.size()];
+    int i = 0;
+    for(String tLine: lineList) {
+      tCode[i] = new Instruction(name, tLine);
+      tCode[i].link(mIndex);
+      i++;
     }
+    // the last instruction that isn't a NOP may be a tail call
+    for(i = tCode.length - 1; i >= 0 && tCode[i].getKind() == Instruction.NOP; i--) { }
+    if(i >= 0) { tCode[i].markTail(); }
+    gCode = tCode;
+    lineList = null;
   }
-  
-  private void tick() { ticks++; }
 }
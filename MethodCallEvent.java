@@ -0,0 +1,52 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*****************
+ * MethodCallEvent - a Java Flight Recorder event for a frame pushed onto a
+ * simulated call stack. CallStack emits it. The fields are named for how
+ * they show up in a recording, not after the repository's field prefixes.
+ * @author Andy
+ *
+ */
+@Name("vmsim.MethodCall")
+@Label("Simulated Method Call")
+@Category("VM Simulator")
+@Description("A frame was pushed onto a simulated call stack")
+@StackTrace(false)
+public class MethodCallEvent extends Event {
+
+  @Label("Method")
+  String method;
+
+  @Label("Depth")
+  @Description("Frames on the stack, counting this one")
+  int depth;
+
+  @Label("Memory Used")
+  @DataAmount
+  long memory;
+
+  /*************
+   * Records a call if this event is being recorded. Callers check
+   * SimulationEvents.isRecording() first: loading an Event class is slow,
+   * so without a recording this one is never loaded.
+   * @param mMethod the method called
+   * @param mDepth frames on the stack, counting the new one
+   * @param mMemory simulated memory used, counting the new frame
+   */
+  public static void emit(Method mMethod, int mDepth, long mMemory) {
+    if(!SimulationEvents.isRecording()) { return; }
+    MethodCallEvent tEvent = new MethodCallEvent();
+    if(tEvent.isEnabled()) {
+      tEvent.method = mMethod.getName();
+      tEvent.depth = mDepth;
+      tEvent.memory = mMemory;
+      tEvent.commit();
+    }
+  }
+}
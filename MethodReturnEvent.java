@@ -0,0 +1,42 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*****************
+ * MethodReturnEvent - a Java Flight Recorder event for a frame popped off a
+ * simulated call stack. CallStack emits it.
+ * @author Andy
+ *
+ */
+@Name("vmsim.MethodReturn")
+@Label("Simulated Method Return")
+@Category("VM Simulator")
+@Description("A frame was popped off a simulated call stack")
+@StackTrace(false)
+public class MethodReturnEvent extends Event {
+
+  @Label("Method")
+  String method;
+
+  @Label("Depth")
+  @Description("Frames left on the stack")
+  int depth;
+
+  /*************
+   * Records a return if this event is being recorded
+   * @param mMethod the method returning
+   * @param mDepth frames left on the stack
+   */
+  public static void emit(Method mMethod, int mDepth) {
+    if(!SimulationEvents.isRecording()) { return; }
+    MethodReturnEvent tEvent = new MethodReturnEvent();
+    if(tEvent.isEnabled()) {
+      tEvent.method = mMethod.getName();
+      tEvent.depth = mDepth;
+      tEvent.commit();
+    }
+  }
+}
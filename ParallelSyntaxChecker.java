@@ -0,0 +1,389 @@
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*****************
+ * ParallelSyntaxChecker - checks that the parentheses (), brackets [] and
+ * squiggly-brackets {} of a program file match, as ProgramLexer does, but
+ * on all cores: for generated programs hundreds of megabytes long. It finds
+ * the same first error and reports it with the same message and line.
+ *
+ * The file is memory-mapped and split into chunks that start at the start
+ * of a line. A // comment never runs past the end of its line, so each
+ * chunk can be scanned on its own on a ForkJoinPool. A chunk boils down to
+ * a Summary: the closers it leaves unmatched at its start, the openers it
+ * leaves unclosed at its end, and its first error, if any. Summaries of
+ * neighbouring chunks combine into the summary of both, so the pool merges
+ * them in order as it goes, and the summary of the whole file says whether
+ * it is good and, if not, where it first goes wrong.
+ *
+ * Like FileReader, it reads the file in the default charset, which has to
+ * agree with ASCII: UTF-8, or a single-byte charset such as ISO-8859-1.
+ *
+ * Usage: java ParallelSyntaxChecker [-threads n] [-chunk bytes] [-compare] file...
+ *   -threads  pool size (default: one per core)
+ *   -chunk    bytes per chunk (default 1 MB)
+ *   -compare  also check each file with ProgramLexer and compare the times
+ *             and results
+ * @author Andy
+ *
+ */
+public class ParallelSyntaxChecker {
+
+  public static final int DEFAULT_CHUNK = 1 << 20;
+  private static final int SCAN_BLOCK = 1 << 12;     // bytes read at a time looking for a line start
+  private static final int SCAN_BUFFER = 1 << 16;   // bytes copied out of the mapping at a time
+  // only in UTF-8 are some characters beyond ASCII whitespace to Character.isWhitespace()
+  private static final boolean UTF8 = Charset.defaultCharset().equals(StandardCharsets.UTF_8);
+  // what scan() makes of each byte: most are CODE or SPACE and need no more than a table lookup
+  private static final byte CODE = 0;
+  private static final byte SPACE = 1;
+  private static final byte SPECIAL = 2;     // line ends, '/', delimiters and, in UTF-8, bytes beyond ASCII
+  private static final byte[] BYTE_CLASS = new byte[256];
+  static {
+    for(int i = 0; i < 128; i++) { BYTE_CLASS[i] = Character.isWhitespace((char) i) ? SPACE : CODE; }
+    for(int i = 128; i < 256; i++) { BYTE_CLASS[i] = UTF8 ? SPECIAL : CODE; }
+    for(char tChar: "\n\r/()[]{}".toCharArray()) { BYTE_CLASS[tChar] = SPECIAL; }
+  }
+
+  private ForkJoinPool gPool;
+  private int gChunkSize;
+
+  /***************
+   * Constructor - checks on the common pool, a megabyte at a time
+   */
+  public ParallelSyntaxChecker() {
+    this(ForkJoinPool.commonPool(), DEFAULT_CHUNK);
+  }
+
+  /***************
+   * Constructor
+   * @param mPool the pool to check on
+   * @param mChunkSize the bytes each task scans, give or take a line
+   */
+  public ParallelSyntaxChecker(ForkJoinPool mPool, int mChunkSize) {
+    gPool = mPool;
+    gChunkSize = Math.max(1, mChunkSize);
+  }
+
+  /*************
+   * Checks a program file
+   * @param mFile the file
+   * @throws SyntaxErrorException if the delimiters don't match, with the
+   *   message ProgramLexer would have given
+   * @throws IOException if the file can't be read
+   */
+  public void check(File mFile) throws SyntaxErrorException, IOException {
+    try(FileChannel tChannel = FileChannel.open(mFile.toPath(), StandardOpenOption.READ)) {
+      Summary tSummary;
+      try {
+        tSummary = gPool.invoke(new CheckTask(tChannel, tChannel.size(), 0, tChannel.size()));
+      } catch(UncheckedIOException e) {
+        throw e.getCause();
+      }
+      tSummary.verify();
+    }
+  }
+
+  /*****************
+   * What a stretch of the file leaves to be matched up with the rest of
+   * it. Line numbers are counted from the start of the stretch, from 0.
+   */
+  private static final class Summary {
+    private int gLines;                    // line ends in the stretch
+    private int gLastCode = -1;            // last line holding anything but whitespace, or -1
+    private CircularCharArrayDeque gClosers = new CircularCharArrayDeque();     // unmatched at the start, in order
+    private CircularIntArrayDeque gCloserLines = new CircularIntArrayDeque();   // and the lines they are on
+    private CircularCharArrayDeque gOpeners = new CircularCharArrayDeque();     // unclosed at the end, last on top
+    private char gErrorOpen;               // the first error, after the unmatched closers: a mismatched pair
+    private char gErrorClose;
+    private int gErrorLine = -1;           // or -1 for no error
+
+    private boolean hasError() { return gErrorLine >= 0; }
+
+    private void setError(char mOpen, char mClose, int mLine) {
+      gErrorOpen = mOpen;
+      gErrorClose = mClose;
+      gErrorLine = mLine;
+    }
+
+    /*************
+     * Adds on the summary of the stretch just after this one, meeting its
+     * unmatched closers with this one's unclosed openers
+     * @param mNext the next stretch; used up
+     * @return this summary, now of both stretches
+     */
+    private Summary append(Summary mNext) {
+      if(hasError()) { return this; }      // the rest comes after the error
+      while(!mNext.gClosers.isEmpty()) {
+        char tClose = mNext.gClosers.removeFront();
+        int tLine = mNext.gCloserLines.removeFront() + gLines;
+        if(gOpeners.isEmpty()) {
+          gClosers.addBack(tClose);
+          gCloserLines.addBack(tLine);
+        } else {
+          char tOpen = gOpeners.removeBack();
+          if(!isPaired(tOpen, tClose)) {
+            setError(tOpen, tClose, tLine);
+            gLines += mNext.gLines;
+            return this;
+          }
+        }
+      }
+      if(mNext.hasError()) {
+        setError(mNext.gErrorOpen, mNext.gErrorClose, mNext.gErrorLine + gLines);
+      } else {
+        while(!mNext.gOpeners.isEmpty()) { gOpeners.addBack(mNext.gOpeners.removeFront()); }
+      }
+      if(mNext.gLastCode >= 0) { gLastCode = mNext.gLastCode + gLines; }
+      gLines += mNext.gLines;
+      return this;
+    }
+
+    /*************
+     * Throws the error ProgramLexer would have for a file this summary is of
+     */
+    private void verify() throws SyntaxErrorException {
+      if(!gClosers.isEmpty()) {
+        throw new SyntaxErrorException("Error: unmatched closed delimiter: " + gClosers.peekFront()
+            + " at line " + (gCloserLines.peekFront() + 1));
+      }
+      if(hasError()) {
+        throw new SyntaxErrorException("Error: delimiters not paired: " + gErrorOpen + " and " + gErrorClose
+            + " at line " + (gErrorLine + 1));
+      }
+      if(!gOpeners.isEmpty()) {
+        throw new SyntaxErrorException("Error: delimiter not closed at line " + (gLastCode + 1));
+      }
+    }
+  }
+
+  /*****************
+   * Summarizes the lines starting in a range of the file: splits the range
+   * in two until it is no more than a chunk, and appends the halves'
+   * summaries
+   */
+  private final class CheckTask extends RecursiveTask<Summary> {
+    private static final long serialVersionUID = 1L;
+    private final FileChannel gChannel;
+    private final long gSize;
+    private final long gFrom;
+    private final long gTo;
+
+    private CheckTask(FileChannel mChannel, long mSize, long mFrom, long mTo) {
+      gChannel = mChannel;
+      gSize = mSize;
+      gFrom = mFrom;
+      gTo = mTo;
+    }
+
+    protected Summary compute() {
+      try {
+        if(gTo - gFrom <= gChunkSize) {
+          long tStart = lineStart(gChannel, gSize, gFrom);
+          long tEnd = lineStart(gChannel, gSize, gTo);
+          if(tEnd <= tStart) { return new Summary(); }
+          if(tEnd - tStart > Integer.MAX_VALUE) { throw new IOException("Line too long to check at byte " + tStart); }
+          return scan(gChannel.map(FileChannel.MapMode.READ_ONLY, tStart, tEnd - tStart));
+        }
+        long tMiddle = gFrom + (gTo - gFrom) / 2;
+        CheckTask tLeft = new CheckTask(gChannel, gSize, gFrom, tMiddle);
+        tLeft.fork();
+        Summary tRight = new CheckTask(gChannel, gSize, tMiddle, gTo).compute();
+        return tLeft.join().append(tRight);
+      } catch(IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /*************
+   * Finds the first line start at or after a position: the start of the
+   * file, or just after a line end as ProgramLexer sees them ("\n", "\r"
+   * or "\r\n"). Neighbouring ranges find the same one, so each line is
+   * scanned once.
+   * @return the line start, or the size of the file if there is none
+   */
+  private static long lineStart(FileChannel mChannel, long mSize, long mPosition) throws IOException {
+    if(mPosition <= 0) { return 0; }
+    if(mPosition >= mSize) { return mSize; }
+    ByteBuffer tBuffer = ByteBuffer.allocate(SCAN_BLOCK + 1);
+    for(long tBase = mPosition - 1; tBase < mSize; tBase += SCAN_BLOCK) {
+      tBuffer.clear();
+      while(tBuffer.hasRemaining() && mChannel.read(tBuffer, tBase + tBuffer.position()) > 0) { }
+      int tCount = tBuffer.position();
+      // byte i ends a line if it is '\n', or '\r' not followed by '\n'
+      for(int i = 0; i < Math.min(tCount, SCAN_BLOCK); i++) {
+        byte tByte = tBuffer.get(i);
+        if(tByte == '\n' || (tByte == '\r' && (i + 1 >= tCount || tBuffer.get(i + 1) != '\n'))) {
+          return tBase + i + 1;
+        }
+      }
+    }
+    return mSize;
+  }
+
+  /*************
+   * Summarizes a run of whole lines, the way ProgramLexer reads them
+   */
+  private static Summary scan(MappedByteBuffer mBytes) {
+    Summary tSummary = new Summary();
+    char[] tOpeners = new char[64];        // a plain stack is quicker than the summary's deque
+    int tDepth = 0;
+    int tLine = 0;
+    boolean bAfterSlash = false;
+    boolean bInComment = false;
+    boolean bAfterCR = false;
+    int tLength = mBytes.limit();
+    byte[] tBuffer = new byte[Math.min(SCAN_BUFFER, tLength)];
+    int tBase = -tBuffer.length;           // where in the mapping tBuffer was copied from
+    for(int i = 0; i < tLength; i++) {
+      if(i - tBase >= tBuffer.length) {
+        tBase = i;
+        mBytes.get(i, tBuffer, 0, Math.min(tBuffer.length, tLength - i));
+      }
+      byte tByte = tBuffer[i - tBase];
+      byte tClass = BYTE_CLASS[tByte & 0xff];
+      if(tClass != SPECIAL) {
+        if(tClass == CODE) { tSummary.gLastCode = tLine; }
+        bAfterSlash = false;
+        bAfterCR = false;
+        continue;
+      }
+      if(tByte == '\n') {
+        if(!bAfterCR) {
+          tLine++;
+          bAfterSlash = false;
+          bInComment = false;
+        }
+        bAfterCR = false;
+        continue;
+      }
+      bAfterCR = false;
+      if(tByte == '\r') {
+        tLine++;
+        bAfterSlash = false;
+        bInComment = false;
+        bAfterCR = true;
+        continue;
+      }
+      if(tByte < 0) {
+        // a character beyond ASCII: code, unless it is one of Java's whitespace characters
+        int tSkip = whitespaceLength(mBytes, i, tLength);
+        if(tSkip == 0) { tSummary.gLastCode = tLine; } else { i += tSkip - 1; }
+        bAfterSlash = false;
+        continue;
+      }
+      tSummary.gLastCode = tLine;
+      if(bInComment) { continue; }
+      if(tByte == '/') {
+        if(bAfterSlash) { bInComment = true; }
+        bAfterSlash = true;
+        continue;
+      }
+      bAfterSlash = false;
+      char tChar = (char) tByte;
+      if(tChar == '(' || tChar == '[' || tChar == '{') {
+        if(tDepth == tOpeners.length) { tOpeners = Arrays.copyOf(tOpeners, 2 * tDepth); }
+        tOpeners[tDepth++] = tChar;
+      } else if(tDepth == 0) {
+        tSummary.gClosers.addBack(tChar);
+        tSummary.gCloserLines.addBack(tLine);
+      } else if(!isPaired(tOpeners[--tDepth], tChar)) {
+        tSummary.setError(tOpeners[tDepth], tChar, tLine);
+        tSummary.gLines = tLine;
+        return tSummary;
+      }
+    }
+    for(int i = 0; i < tDepth; i++) { tSummary.gOpeners.addBack(tOpeners[i]); }
+    tSummary.gLines = tLine;
+    return tSummary;
+  }
+
+  /*************
+   * Gets the length of the UTF-8 character at mIndex if it is whitespace
+   * to Character.isWhitespace(); all such characters beyond ASCII take
+   * three bytes
+   * @return the length, or 0 if it isn't whitespace
+   */
+  private static int whitespaceLength(MappedByteBuffer mBytes, int mIndex, int mLength) {
+    int tLead = mBytes.get(mIndex) & 0xff;
+    if(tLead < 0xe1 || tLead > 0xe3 || mIndex + 2 >= mLength) { return 0; }
+    int tSecond = mBytes.get(mIndex + 1) & 0xff;
+    int tThird = mBytes.get(mIndex + 2) & 0xff;
+    if((tSecond & 0xc0) != 0x80 || (tThird & 0xc0) != 0x80) { return 0; }
+    int tCode = ((tLead & 0x0f) << 12) | ((tSecond & 0x3f) << 6) | (tThird & 0x3f);
+    return Character.isWhitespace(tCode) ? 3 : 0;
+  }
+
+  /**
+   * Returns true if the given characters, open and close, form a pair
+   * of parentheses, brackets, or braces.
+   */
+  private static boolean isPaired(char open, char close) {
+    return (open == '(' && close == ')') ||
+        (open == '[' && close == ']') ||
+        (open == '{' && close == '}');
+  }
+
+  public static void main(String[] args) throws IOException {
+    int tThreads = Runtime.getRuntime().availableProcessors();
+    int tChunk = DEFAULT_CHUNK;
+    boolean bCompare = false;
+    List<String> tFiles = new ArrayList<String>();
+    for(int i = 0; i < args.length; i++) {
+      if(args[i].equals("-threads") && i + 1 < args.length) { tThreads = Integer.parseInt(args[++i]); }
+      else if(args[i].equals("-chunk") && i + 1 < args.length) { tChunk = Integer.parseInt(args[++i]); }
+      else if(args[i].equals("-compare")) { bCompare = true; }
+      else { tFiles.add(args[i]); }
+    }
+    if(tFiles.isEmpty()) {
+      System.err.println("Usage: java ParallelSyntaxChecker [-threads n] [-chunk bytes] [-compare] file...");
+      System.exit(2);
+    }
+    ForkJoinPool tPool = new ForkJoinPool(tThreads);
+    ParallelSyntaxChecker tChecker = new ParallelSyntaxChecker(tPool, tChunk);
+    boolean bAllGood = true;
+    for(String tName: tFiles) {
+      File tFile = new File(tName);
+      long tStart = System.nanoTime();
+      String tResult = "ok";
+      try {
+        tChecker.check(tFile);
+      } catch(SyntaxErrorException e) {
+        tResult = e.getMessage();
+        bAllGood = false;
+      }
+      long tElapsed = System.nanoTime() - tStart;
+      System.out.println(tName + ": " + tResult + " (" + (tElapsed / 1000000) + " ms, "
+          + (long) (tFile.length() * 1e3 / Math.max(tElapsed, 1)) + " MB/s on " + tThreads + " threads)");
+      if(bCompare) {
+        tStart = System.nanoTime();
+        String tSequential = "ok";
+        try(Reader tReader = new FileReader(tFile)) {
+          new ProgramLexer().lex(tReader);
+        } catch(SyntaxErrorException e) {
+          tSequential = e.getMessage();
+        }
+        tElapsed = System.nanoTime() - tStart;
+        System.out.println(tName + ": ProgramLexer " + (tSequential.equals(tResult) ? "agrees" : "says " + tSequential)
+            + " (" + (tElapsed / 1000000) + " ms)");
+      }
+    }
+    tPool.shutdown();
+    if(!bAllGood) { System.exit(1); }
+  }
+}
@@ -0,0 +1,41 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/*****************
+ * PrintEvent - a Java Flight Recorder event for a print statement executed
+ * by a simulated program. Program emits it.
+ * @author Andy
+ *
+ */
+@Name("vmsim.Print")
+@Label("Simulated Print")
+@Category("VM Simulator")
+@Description("A simulated program printed a line")
+@StackTrace(false)
+public class PrintEvent extends Event {
+
+  @Label("Method")
+  String method;
+
+  @Label("Output")
+  String text;
+
+  /*************
+   * Records a print if this event is being recorded
+   * @param mMethod the method printing
+   * @param mInstruction the print instruction
+   */
+  public static void emit(Method mMethod, Instruction mInstruction) {
+    if(!SimulationEvents.isRecording()) { return; }
+    PrintEvent tEvent = new PrintEvent();
+    if(tEvent.isEnabled()) {
+      tEvent.method = mMethod.getName();
+      tEvent.text = mInstruction.getText();
+      tEvent.commit();
+    }
+  }
+}
@@ -0,0 +1,23 @@
+import java.util.List;
+
+/*****************
+ * PriorityPolicy - always runs the program with the highest priority.
+ * Programs of equal priority take turns, round-robin.
+ * @author Andy
+ *
+ */
+public class PriorityPolicy implements SchedulingPolicy {
+
+  public ScheduledProgram choose(List<ScheduledProgram> mReady) {
+    ScheduledProgram tBest = null;
+    for(ScheduledProgram tProg: mReady) {
+      if(tBest == null || tProg.getPriority() > tBest.getPriority()
+          || (tProg.getPriority() == tBest.getPriority() && tProg.getLastRun() < tBest.getLastRun())) {
+        tBest = tProg;
+      }
+    }
+    return tBest;
+  }
+
+  public String toString() { return "priority"; }
+}
@@ -1,12 +1,11 @@
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.StringReader;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Scanner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 
 /******************
@@ -18,145 +17,40 @@ import java.util.regex.Pattern;
  */
 public class Program {
     
-    /*************
-     * A simple syntax-checking mechanism that makes sure our programs have matching
-     * parentheses (), brackets [], and squiggly-brackets {}.
-     * To be implemented by students.
-     * @param mScanner the scanner passed in from the constructor
-     * @throws SyntaxErrorException if a syntax error is encountered, with a helpful message.
-     * @return true if syntax passes.
-     */
-    private boolean syntaxCheck(Scanner mScanner) throws SyntaxErrorException {
-        CircularArrayDequeImplementation <Character> openDelimiterDeque = new CircularArrayDequeImplementation <> (); // deque used for delimiter matching
-        String[] lines = new String[3]; // to store lines of code
-        int lineCount = 0;
-        
-        // read lines from file
-        while (mScanner.hasNext()) {
-            lines = ensureCapacity(lines, lineCount);
-            lines[lineCount] = mScanner.nextLine();
-            lineCount++;
-        }
-        
-        boolean isBalanced = true;
-        String errorMsg = "";
-        int charIndex = 0;
-        int line = 0;
-        
-        // traverse through all lines of code
-        while (line < lineCount) {
-            String expression = lines[line];     
-            int characterCount = expression.length();
-            charIndex = 0;
-            char nextCharacter = ' ';
-                
-            // traverse through all characters
-            while (isBalanced && (charIndex < characterCount)) {
-                nextCharacter = expression.charAt(charIndex);
-                
-                // check several conditions
-                if ((charIndex == characterCount - 1) || 
-                    (nextCharacter != '/') || 
-                    (expression.charAt(charIndex + 1) != '/')) {
-                    
-                    // check delimiters
-                    switch (nextCharacter){
-                        case '(': case '[': case '{':
-                            openDelimiterDeque.addFront(nextCharacter);
-                            break;             
-                        case ')': case ']': case '}':
-                            if (openDelimiterDeque.isEmpty()) {
-                                isBalanced = false;
-                                errorMsg = "unmatched closed delimiter: " + nextCharacter + " at line " + (line + 1);
-                            } else {
-                                char openDelimiter = openDelimiterDeque.removeFront();
-                                isBalanced = isPaired(openDelimiter, nextCharacter);
-                                if (isBalanced == false) {
-                                    errorMsg = "delimiters not paired: " + openDelimiter + " and " + nextCharacter + " at line " + (line + 1);
-                                }
-                            } // end if
-                            break;
-                        default: break; // Ignore unexpected characters
-                    } // end switch
-                    charIndex++;
-                } // end if
-                
-                // ignore comments by skipping the line
-                else if (charIndex != characterCount - 1) {
-                    charIndex = characterCount;
-                }
-            } // end nested while loop
-            line++;
-        } // end while loop
-        
-        // if there are unmatched delimiters left in the deque 
-        if (charIndex != lineCount - 1 && isBalanced && !openDelimiterDeque.isEmpty()) {
-            isBalanced = false;
-            errorMsg = "delimiter not closed at line " + line;
-        }
-
-        if (!isBalanced) throw new SyntaxErrorException("Error: " + errorMsg);
-        
-        return isBalanced;
-    }
-        
-   /** 
-   * Returns true if the given characters, open and close, form a pair
-   * of parentheses, brackets, or braces.
-   */
-   private static boolean isPaired(char open, char close) {
-       return (open == '(' && close == ')') ||
-           (open == '[' && close == ']') ||
-           (open == '{' && close == '}');
-   }
-    
-    
-   /** 
-   * Doubles the capacity of the array list if it is full.
-   */
-   private String[] ensureCapacity(String[] lines, int index) {
-       String[] newLines = lines;
-       int capacity = lines.length - 1;
-       
-       if (index >= capacity) {
-           int newCapacity = 2 * capacity;
-           newLines = new String[newCapacity];
-           for (int i = 0; i < capacity; i++) {
-               newLines[i] = lines[i];
-           }
-       } // end if
-       return newLines;
-   } 
-    
     /*******************
      * Program's constructor. Dynamically tries to instantiate its call stack... 
      * If you haven't written class CallStack yet, it won't bomb.
      * @param mFile The file to read for the program.
-     * @param mComp The simulation component that creates this program
+     * @param mListener The listener (usually a SimulationWorker) that receives this program's events
      * @throws SyntaxErrorException
      */
-    public Program(File mFile, SimulationComponent mComp) throws SyntaxErrorException {
-        callStack = instantiate(mComp);
-        bFinished = false;
-        gName = mFile.getName();
-        Scanner s = null;
+    public Program(File mFile, SimulationListener mListener) throws SyntaxErrorException {
+        ProgramImage tImage = null;
         try {
-            s = new Scanner(mFile);
+            tImage = ProgramCache.shared().load(mFile);
         } catch (FileNotFoundException e) {
             System.err.println("Error: File " + mFile.getName() + " not found!");
             e.printStackTrace();
             System.exit(1);
+        } catch (IOException e) {
+            System.err.println("Error: File " + mFile.getName() + " could not be read!");
+            e.printStackTrace();
+            System.exit(1);
         }
-        if(syntaxCheck(s)) {
-            s.close();
-            try {
-                s = new Scanner(mFile);
-            } catch (FileNotFoundException e) {
-                e.printStackTrace();
-            }
-            loadMethodList(s);
-            gMethodList.get(0).setStack(callStack);
-        }
+        gImage = tImage;
+        callStack = instantiate(mListener);
+        bFinished = false;
+    }
+
+    /*******************
+     * Creates a program that runs an already compiled image
+     * @param mImage the compiled program
+     * @param mListener The listener that receives this program's events
+     */
+    public Program(ProgramImage mImage, SimulationListener mListener) {
+        gImage = mImage;
+        callStack = instantiate(mListener);
+        bFinished = false;
     }
 
     /************
@@ -165,102 +59,304 @@ public class Program {
      * @throws SyntaxErrorException
      */
     protected Program(String mProgramString) throws SyntaxErrorException {
-        gName = "Unnamed program";
-        Scanner s = new Scanner(mProgramString);
-        if(syntaxCheck(s)) {
-            s = new Scanner(mProgramString);
-            loadMethodList(s);
-        }    
+        try {
+            gImage = ProgramImage.read("Unnamed program", new StringReader(mProgramString));
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // StringReader doesn't throw
+        }
     }
 
     /***********
      * Gets the name of this program
      * @return
      */
-    public String getName() { return gName;  }
-
-    private Deque<Method> callStack;
-
-    private void loadMethodList(Scanner mScanner) {
-        String tLine = null;
-        gMethodList = new LinkedList<Method>();
-
-        while(mScanner.hasNextLine()) {
-            tLine = mScanner.nextLine();
-            Pattern tPattern = Pattern.compile("def .*?(\\w*)\\(.*?\\)\\s*(\\{?)");
-            Matcher tM1 = tPattern.matcher(tLine);
-            if(tM1.matches()) {
-                Method tMethod = new Method(tM1.group(1), this);
-                int bracketcounter = tM1.group(2).equals("{")?1:0;
-                while(bracketcounter > 0 && mScanner.hasNextLine()) {
-                    tLine = mScanner.nextLine();
-                    tMethod.addLine(tLine);
-                    char tPrevChar = ' ';
-                    for(int i=0; i<tLine.length(); i++) {
-                        char tChar = tLine.charAt(i);
-                        if(tChar == '/' && tPrevChar == '/') { i = tLine.length(); }
-                        else if(tChar == '{') { bracketcounter++; }
-                        else if(tChar == '}') { bracketcounter--; }
-                        tPrevChar = tChar;
-                    }
-                }
-                gMethodList.add(tMethod);
-            }
-        }
-    }
+    public String getName() { return gImage.getName();  }
 
-    // Name of the program's file
-    private String gName;
+    /***********
+     * Gets the compiled image this program runs
+     * @return the image
+     */
+    public ProgramImage getImage() { return gImage; }
+
+    private Deque<Frame> callStack;
 
-    // ordered list of Methods that this Program calls
-    private List<Method> gMethodList;
+    // the compiled program: its name and Methods
+    private ProgramImage gImage;
+
+    // frame running main when there is no call stack
+    private Frame gRootFrame;
 
     private boolean bFinished;
+    private boolean bOverflowed;    // the run ended in a stack overflow
+    private boolean bTailCalls;     // replace the caller's frame on tail calls
     private boolean gStarted = false;
+    private long gSteps;            // steps executed since the program started
+    private long gOutputs;          // status messages produced since the program started
+
+    // call stack methods used for checkpoints, looked up when first used
+    private static final int GET_FRAMES = 0;
+    private static final int SET_FRAMES = 1;
+    private static final String[] CALL_STACK_METHODS = { "getFrames", "setFrames" };
+    private static final Class<?>[][] CALL_STACK_PARAMETERS = { { int.class }, { int.class, Frame[].class } };
+    private final java.lang.reflect.Method[] gCallStackMethods = new java.lang.reflect.Method[2];
 
-    public List<Method> getMethodList() { return gMethodList; }
+    public List<Method> getMethodList() { return gImage.getMethodList(); }
 
     /***********
-     * Gets a method given a name
+     * Gets a method given a name. Methods are shared definitions, so
+     * the same object is returned for every call.
      * @param mName the name of the Method to retrieve
-     * @return the method
+     * @return the method, or null if there is none
      */
     public Method getMethod(String mName) {
-        for(Method tMeth: gMethodList) {
-            if(tMeth.getName().equals(mName)) {
-                Method ret = tMeth.copy();
-                ret.setStack(callStack);
-                return ret;
-            }
+        return gImage.getMethod(mName);
+    }
+
+    /******************
+     * Rewinds this program to its first step, keeping the compiled image and
+     * the call stack, so it can be run again without reloading it.
+     * Listeners are not told about the frames that are discarded.
+     */
+    public void reset() {
+        if(callStack != null) { callStack.clear(); }
+        gRootFrame = null;
+        gStarted = false;
+        bFinished = false;
+        bOverflowed = false;
+        gSteps = 0;
+        gOutputs = 0;
+    }
+
+    /******************
+     * Gets the number of times step() has been called since the program
+     * was created or reset
+     * @return the step count
+     */
+    public long getSteps() { return gSteps; }
+
+    /******************
+     * Gets the number of status messages this program has produced: one
+     * per instruction executed, and one for a stack overflow
+     * @return the message count
+     */
+    public long getOutputs() { return gOutputs; }
+
+    /******************
+     * Takes a checkpoint of this program between steps, for restore() to
+     * come back to. Costs time and memory in proportion to the depth of
+     * the call stack.
+     * @return the checkpoint
+     */
+    public ProgramCheckpoint checkpoint() {
+        return checkpoint(null, 0);
+    }
+
+    /******************
+     * Takes a checkpoint of this program that shares its bottom frames
+     * with an earlier one, so it costs time and memory in proportion to
+     * the frames above them only. The caller must know those frames haven't
+     * been popped or executed since mBase was taken: that the stack never
+     * got shallower than mShared + 1 frames.
+     * @param mBase the earlier checkpoint, or null for none
+     * @param mShared how many bottom frames to share with it
+     * @return the checkpoint
+     */
+    public ProgramCheckpoint checkpoint(ProgramCheckpoint mBase, int mShared) {
+        Frame[] tFrames;
+        if(callStack == null) {
+            tFrames = gRootFrame == null ? new Frame[0] : new Frame[] { gRootFrame };
+            mShared = 0;
+        } else {
+            tFrames = (Frame[]) invokeOnCallStack(GET_FRAMES, mShared);
         }
-        return null;
+        return new ProgramCheckpoint(mBase, mShared, tFrames, gSteps, gOutputs, gStarted, bFinished, bOverflowed);
+    }
+
+    /******************
+     * Puts this program back in the state it was in at a checkpoint taken
+     * of it. Like reset(), this doesn't tell listeners about the frames
+     * that are replaced.
+     * @param mCheckpoint the checkpoint
+     */
+    public void restore(ProgramCheckpoint mCheckpoint) {
+        restore(mCheckpoint, 0);
+    }
+
+    /******************
+     * Puts this program back in the state it was in at a checkpoint taken
+     * of it, keeping the bottom frames of its stack. The caller must know
+     * those frames are as they were at the checkpoint: that the program has
+     * only run forward since it, and the stack never got shallower than
+     * mKept + 1 frames.
+     * @param mCheckpoint the checkpoint
+     * @param mKept how many frames at the bottom of the stack to keep
+     */
+    public void restore(ProgramCheckpoint mCheckpoint, int mKept) {
+        if(callStack == null) {
+            Frame[] tFrames = mCheckpoint.getFrames();
+            gRootFrame = tFrames.length == 0 ? null : tFrames[0];
+        } else {
+            invokeOnCallStack(SET_FRAMES, mKept, mCheckpoint.getFrames(mKept));
+        }
+        gStarted = mCheckpoint.isStarted();
+        bFinished = mCheckpoint.isFinished();
+        bOverflowed = mCheckpoint.isStackOverflowed();
+        gSteps = mCheckpoint.getSteps();
+        gOutputs = mCheckpoint.getOutputs();
     }
 
     /******************
-     * Executes one step of this method, using the given SimulationComponent to display
-     * what is going on
-     * @param mComp the SimulationComponent in which to display things
+     * Executes one step of this program, reporting what is going on to the 
+     * given listener. After a stack overflow, this does nothing.
+     * @param mListener the listener to report to
      */
-    public void step(SimulationComponent mComp) {
+    public void step(SimulationListener mListener) {
+        if(bOverflowed) { return; }
+        gSteps++;
+        try {
+            advance(mListener);
+        } catch (StackOverflowException e) {
+            bOverflowed = true;
+            gOutputs++;
+            mListener.stackOverflowed(this, e);
+            finish(mListener);
+        }
+    }
+
+    private void advance(SimulationListener mListener) {
         if(callStack == null) {
-            if(!gMethodList.get(0).isFinished()) {
-                gMethodList.get(0).step(mComp);
-            } else { bFinished = true; }
+            if(gRootFrame == null) { gRootFrame = new Frame(getMethodList().get(0)); }
+            if(!gRootFrame.isFinished()) {
+                execute(gRootFrame, mListener);
+            } else { finish(mListener); }
             return;
         }
         if(!gStarted && callStack != null) {
-            callStack.addFront(gMethodList.get(0));
+            callStack.addFront(new Frame(getMethodList().get(0)));
             gStarted = true;
         }
         if(callStack != null && !callStack.isEmpty()) { 
-            if(callStack.peekFront().isFinished()) { 
+            Frame tTop = callStack.peekFront();
+            if(tTop.isFinished()) { 
                 callStack.removeFront(); 
             } else { 
-                callStack.peekFront().step(mComp); 
+                execute(tTop, mListener); 
             }
         }
         else { 
-            bFinished = true; 
+            finish(mListener); 
+        }
+    }
+
+    /******************
+     * Executes the next instruction of the given frame
+     * @param mFrame the frame to advance
+     * @param mListener the listener to report to
+     */
+    private void execute(Frame mFrame, SimulationListener mListener) {
+        Instruction tInstr = mFrame.next();
+        gOutputs++;
+        mListener.outputEmitted(tInstr);
+        switch(tInstr.getKind()) {
+            case Instruction.CALL:
+                if(callStack == null) { break; }
+                if(bTailCalls && tInstr.isTailCall()) {
+                    // the caller has nothing left but NOPs: the callee takes its frame
+                    callStack.removeFront();
+                    mFrame.reenter(tInstr.getCallee());
+                    callStack.addFront(mFrame);
+                } else {
+                    callStack.addFront(new Frame(tInstr.getCallee()));
+                }
+                break;
+            case Instruction.PRINT:
+                if(SimulationEvents.isRecording()) { PrintEvent.emit(mFrame.getMethod(), tInstr); }
+                break;
+            default: break;
+        }
+    }
+
+    private void finish(SimulationListener mListener) {
+        if(!bFinished) {
+            bFinished = true;
+            mListener.programFinished(this);
+        }
+    }
+
+    /*************
+     * Turns tail-call elimination on or off. With it on, a call that is the
+     * last instruction of a method (apart from blank, brace and comment
+     * lines) replaces the caller's frame instead of pushing a new one, so
+     * tail-recursive programs run in constant memory. Listeners see the
+     * caller popped and the callee pushed, and the caller's trailing NOP
+     * lines are never executed.
+     * @param mOn true to eliminate tail calls
+     */
+    public void setTailCallElimination(boolean mOn) {
+        bTailCalls = mOn;
+    }
+
+    /*************
+     * Returns whether tail calls are eliminated
+     * @return true if tail-call elimination is on
+     */
+    public boolean isTailCallElimination() {
+        return bTailCalls;
+    }
+
+    /*************
+     * Returns whether this program stopped because it ran out of memory
+     * @return true if the program overflowed its stack
+     */
+    public boolean isStackOverflowed() {
+        return bOverflowed;
+    }
+
+    /*************
+     * Limits how much memory this program's frames may use. A call that
+     * doesn't fit ends the run with a stack overflow. Has no effect if the
+     * call stack doesn't support a limit.
+     * @param mLimit the limit, or Long.MAX_VALUE for none
+     */
+    public void setMemoryLimit(long mLimit) {
+        if(callStack == null) { return; }
+        try {
+            callStack.getClass().getMethod("setMemoryLimit", long.class).invoke(callStack, mLimit);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("CallStack has no setMemoryLimit(long) method, memory is not limited.");
+        }
+    }
+
+    /*************
+     * Gets the memory limit set with setMemoryLimit()
+     * @return the limit, or Long.MAX_VALUE if there is none or the call
+     *   stack doesn't support one
+     */
+    public long getMemoryLimit() {
+        if(callStack == null) { return Long.MAX_VALUE; }
+        try {
+            return (Long) callStack.getClass().getMethod("getMemoryLimit").invoke(callStack);
+        } catch (ReflectiveOperationException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /*************
+     * Calls a method of the call stack that the Deque interface doesn't
+     * have. The lookup is done once per program, as checkpoints are taken
+     * every few thousand steps.
+     * @throws UnsupportedOperationException if the call stack hasn't got it
+     */
+    private Object invokeOnCallStack(int mWhich, Object... mArgs) {
+        try {
+            if(gCallStackMethods[mWhich] == null) {
+                gCallStackMethods[mWhich] = callStack.getClass().getMethod(CALL_STACK_METHODS[mWhich],
+                    CALL_STACK_PARAMETERS[mWhich]);
+            }
+            return gCallStackMethods[mWhich].invoke(callStack, mArgs);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("CallStack has no " + CALL_STACK_METHODS[mWhich]
+                + " method, checkpoints need it.", e);
         }
     }
 
@@ -272,22 +368,28 @@ public class Program {
         return bFinished;
     }
 
+    private static volatile boolean bAnnounced = false;
+
     /************
      * Crazy little method to dynamically instantiate CallStack class
-     * @param mComp
+     * @param mListener
      * @return an instantiation of CallStack, or null if failed
      */
     @SuppressWarnings("unchecked")
-    private Deque<Method> instantiate(SimulationComponent mComp) {
+    private Deque<Frame> instantiate(SimulationListener mListener) {
         String problem = "";
         try {
-            Constructor<?> m = Class.forName("CallStack").getConstructor(SimulationComponent.class);
-            System.err.println("Call Stack instantiated... will attempt to run on VM!");
-            return (Deque<Method>) m.newInstance(mComp);
+            Constructor<?> m = Class.forName("CallStack").getConstructor(SimulationListener.class);
+            if(!bAnnounced) {
+                // only once: thousands of programs may be created by ThreadedRunner
+                bAnnounced = true;
+                System.err.println("Call Stack instantiated... will attempt to run on VM!");
+            }
+            return (Deque<Frame>) m.newInstance(mListener);
         } catch (SecurityException e) {
             problem = "Access to constructor denied. (SecurityException)";
         } catch (NoSuchMethodException e) {
-            problem = "No constructor found for CallStack that takes a SimluationComponent as a parameter. (NoSuchMethodException)";
+            problem = "No constructor found for CallStack that takes a SimulationListener as a parameter. (NoSuchMethodException)";
         } catch (ClassNotFoundException e) {
             problem = "The CallStack class doesn't exist yet (ClassNotFoundException)";
         } catch (IllegalArgumentException e) {
@@ -0,0 +1,90 @@
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/******************
+ * ProgramCache - keeps the compiled images of recently loaded programs, so
+ * running a program again doesn't re-read and re-parse its file. An entry
+ * is only reused while the file's size and modification time are unchanged.
+ * Safe to use from several threads.
+ *
+ * @author Andy
+ *
+ */
+public class ProgramCache {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final ProgramCache SHARED = new ProgramCache(DEFAULT_CAPACITY);
+
+    private final Map<String, Entry> gEntries;
+
+    /*************
+     * Constructor
+     * @param mCapacity how many programs to keep; the least recently used is dropped
+     */
+    public ProgramCache(final int mCapacity) {
+        gEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> mEldest) {
+                return size() > mCapacity;
+            }
+        };
+    }
+
+    /*************
+     * Gets the cache shared by the simulator
+     * @return the shared cache
+     */
+    public static ProgramCache shared() { return SHARED; }
+
+    /*************
+     * Gets the compiled image of the given file, reading it only if it isn't
+     * cached or has changed since it was cached. Syntax errors are not cached.
+     * @param mFile the program file
+     * @return the image
+     * @throws SyntaxErrorException if a syntax error is encountered
+     * @throws IOException if the file can't be read
+     */
+    public ProgramImage load(File mFile) throws SyntaxErrorException, IOException {
+        String tKey = mFile.getCanonicalPath();
+        long tSize = mFile.length();
+        long tModified = mFile.lastModified();
+        synchronized(this) {
+            Entry tEntry = gEntries.get(tKey);
+            if(tEntry != null && tEntry.size == tSize && tEntry.modified == tModified) {
+                return tEntry.image;
+            }
+        }
+
+        // parse outside the lock, so other programs can load meanwhile
+        ProgramImage tImage;
+        try (Reader r = new FileReader(mFile)) {
+            tImage = ProgramImage.read(mFile.getName(), r);
+        }
+        synchronized(this) {
+            gEntries.put(tKey, new Entry(tSize, tModified, tImage));
+        }
+        return tImage;
+    }
+
+    /*************
+     * Forgets every cached program
+     */
+    public synchronized void clear() { gEntries.clear(); }
+
+    private static class Entry {
+        final long size;
+        final long modified;
+        final ProgramImage image;
+
+        Entry(long mSize, long mModified, ProgramImage mImage) {
+            size = mSize;
+            modified = mModified;
+            image = mImage;
+        }
+    }
+}
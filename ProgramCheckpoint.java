@@ -0,0 +1,243 @@
+/*****************
+ * ProgramCheckpoint - the state of a Program between two steps: the method
+ * and instruction pointer of every frame on its call stack, the steps it
+ * has taken and the status messages it has produced. Program.restore()
+ * puts a program back in this state. Checkpoints are immutable, so one can
+ * be restored any number of times.
+ *
+ * Frames low on the stack often stay put from one checkpoint to the next,
+ * so a checkpoint can be taken relative to an earlier one: it keeps only
+ * the frames above those it shares with that base, and finds the rest by
+ * following the chain of bases.
+ * @author Andy
+ *
+ */
+public final class ProgramCheckpoint {
+
+  private final ProgramCheckpoint gBase;   // the checkpoint the bottom frames are shared with, or null
+  private final int gShared;               // how many bottom frames are shared with it
+  private final Method[] gMethods;         // the frames above those: their methods, lowest first
+  private final int[] gTicks;              // and their instruction pointers
+  private final int gChain;                // bases to follow to reach a checkpoint without one
+  private final long gSteps;
+  private final long gOutputs;
+  private final boolean bStarted;
+  private final boolean bFinished;
+  private final boolean bOverflowed;
+
+  /***************
+   * Constructor
+   * @param mBase the checkpoint to share bottom frames with, or null
+   * @param mShared how many bottom frames are shared: no more than mBase
+   *   has, and 0 without a base
+   * @param mFrames the frames above them, lowest first; they are copied
+   * @param mSteps the steps taken
+   * @param mOutputs the status messages produced
+   * @param mStarted main has been called
+   * @param mFinished the program has finished
+   * @param mOverflowed the program overflowed its stack
+   */
+  public ProgramCheckpoint(ProgramCheckpoint mBase, int mShared, Frame[] mFrames, long mSteps,
+      long mOutputs, boolean mStarted, boolean mFinished, boolean mOverflowed) {
+    if(mShared > (mBase == null ? 0 : mBase.getDepth())) {
+      throw new IllegalArgumentException("Can't share " + mShared + " frames with the base checkpoint");
+    }
+    gBase = mShared == 0 ? null : mBase;
+    gShared = mShared;
+    gMethods = new Method[mFrames.length];
+    gTicks = new int[mFrames.length];
+    for(int i = 0; i < mFrames.length; i++) {
+      gMethods[i] = mFrames[i].getMethod();
+      gTicks[i] = mFrames[i].getTicks();
+    }
+    gChain = gBase == null ? 0 : gBase.gChain + 1;
+    gSteps = mSteps;
+    gOutputs = mOutputs;
+    bStarted = mStarted;
+    bFinished = mFinished;
+    bOverflowed = mOverflowed;
+  }
+
+  /***************
+   * Constructor - a copy of mCheckpoint that shares fewer frames: those
+   * it shared above mShared are copied into it from its base
+   */
+  private ProgramCheckpoint(ProgramCheckpoint mCheckpoint, ProgramCheckpoint mBase, int mShared) {
+    gBase = mShared == 0 ? null : mBase;
+    gShared = mShared;
+    gMethods = new Method[mCheckpoint.getDepth() - mShared];
+    gTicks = new int[gMethods.length];
+    mCheckpoint.fill(gMethods, gTicks, mShared);
+    gChain = gBase == null ? 0 : gBase.gChain + 1;
+    gSteps = mCheckpoint.gSteps;
+    gOutputs = mCheckpoint.gOutputs;
+    bStarted = mCheckpoint.bStarted;
+    bFinished = mCheckpoint.bFinished;
+    bOverflowed = mCheckpoint.bOverflowed;
+  }
+
+  /***************
+   * Constructor - mCheckpoint with its base swapped for mBase, which holds
+   * the same frames. The frames above the shared ones aren't copied.
+   */
+  private ProgramCheckpoint(ProgramCheckpoint mCheckpoint, ProgramCheckpoint mBase) {
+    gBase = mBase;
+    gShared = mCheckpoint.gShared;
+    gMethods = mCheckpoint.gMethods;
+    gTicks = mCheckpoint.gTicks;
+    gChain = mBase.gChain + 1;
+    gSteps = mCheckpoint.gSteps;
+    gOutputs = mCheckpoint.gOutputs;
+    bStarted = mCheckpoint.bStarted;
+    bFinished = mCheckpoint.bFinished;
+    bOverflowed = mCheckpoint.bOverflowed;
+  }
+
+  /*************
+   * Gets this checkpoint with no frames shared with mBase, so mBase can be
+   * thrown away. Frames mBase shared with its own base stay shared.
+   * @param mBase a checkpoint, usually this one's base
+   * @return this checkpoint if it doesn't share frames with mBase, or a copy that doesn't
+   */
+  public ProgramCheckpoint without(ProgramCheckpoint mBase) {
+    if(gBase != mBase) { return this; }
+    int tShared = Math.min(gShared, mBase.gShared);
+    return new ProgramCheckpoint(this, mBase.gBase, tShared);
+  }
+
+  /*************
+   * Gets this checkpoint sharing its frames with mCopy instead of mBase, so
+   * mBase can be thrown away once mCopy has replaced it. Nothing is copied.
+   * @param mBase a checkpoint, usually this one's base
+   * @param mCopy a checkpoint with the same frames as mBase
+   * @return this checkpoint if its base isn't mBase, or a copy based on mCopy
+   */
+  public ProgramCheckpoint rebase(ProgramCheckpoint mBase, ProgramCheckpoint mCopy) {
+    if(gBase != mBase || mBase == mCopy) { return this; }
+    if(mCopy.getDepth() != mBase.getDepth()) {
+      throw new IllegalArgumentException("Can't rebase onto a checkpoint with a different stack");
+    }
+    return new ProgramCheckpoint(this, mCopy);
+  }
+
+  /*************
+   * Gets new frames in the state the checkpointed ones were in
+   * @return the frames, bottom of the stack first
+   */
+  public Frame[] getFrames() { return getFrames(0); }
+
+  /*************
+   * Gets new frames in the state the checkpointed ones were in, from the
+   * given depth up
+   * @param mFrom how many frames at the bottom to leave out
+   * @return the frames, lowest first
+   */
+  public Frame[] getFrames(int mFrom) {
+    int tDepth = getDepth();
+    mFrom = Math.max(0, Math.min(mFrom, tDepth));
+    Method[] tMethods = new Method[tDepth - mFrom];
+    int[] tTicks = new int[tMethods.length];
+    fill(tMethods, tTicks, mFrom);
+    Frame[] tFrames = new Frame[tMethods.length];
+    for(int i = 0; i < tFrames.length; i++) { tFrames[i] = new Frame(tMethods[i], tTicks[i]); }
+    return tFrames;
+  }
+
+  /*************
+   * Gets the call stack as a StackSnapshot
+   * @return the top of the stack, or null if it was empty
+   */
+  public StackSnapshot getStack() {
+    Method[] tMethods = new Method[getDepth()];
+    fill(tMethods, new int[tMethods.length], 0);
+    StackSnapshot tTop = null;
+    for(Method tMethod: tMethods) { tTop = StackSnapshot.push(tTop, tMethod); }
+    return tTop;
+  }
+
+  /*************
+   * Copies the methods and instruction pointers of the frames from a
+   * given depth up, as many as the arrays hold, without making Frames:
+   * a deep stack can be gone through a block at a time
+   * @param mFrom the depth of the first frame to copy
+   * @param mMethods gets the methods, lowest first
+   * @param mTicks gets the instruction pointers; at least as long as mMethods
+   * @return the number of frames copied, less than the arrays hold at the top of the stack
+   */
+  public int getFrames(int mFrom, Method[] mMethods, int[] mTicks) {
+    mFrom = Math.max(0, Math.min(mFrom, getDepth()));
+    int tTo = Math.min(getDepth(), mFrom + mMethods.length);
+    fill(mMethods, mTicks, mFrom, tTo);
+    return tTo - mFrom;
+  }
+
+  /*************
+   * Fills in the frames from mFrom up. Frame mFrom goes in element 0.
+   */
+  private void fill(Method[] mMethods, int[] mTicks, int mFrom) {
+    fill(mMethods, mTicks, mFrom, getDepth());
+  }
+
+  /*************
+   * Fills in the frames from mFrom up to mTo, following the chain of bases
+   * down only as far as needed
+   */
+  private void fill(Method[] mMethods, int[] mTicks, int mFrom, int mTo) {
+    int tLimit = mTo;
+    for(ProgramCheckpoint tCheck = this; tCheck != null && tLimit > mFrom; tCheck = tCheck.gBase) {
+      int tStart = Math.max(tCheck.gShared, mFrom);
+      if(tStart < tLimit) {
+        System.arraycopy(tCheck.gMethods, tStart - tCheck.gShared, mMethods, tStart - mFrom, tLimit - tStart);
+        System.arraycopy(tCheck.gTicks, tStart - tCheck.gShared, mTicks, tStart - mFrom, tLimit - tStart);
+        tLimit = tStart;
+      }
+    }
+  }
+
+  /*************
+   * Gets the number of frames on the call stack
+   */
+  public int getDepth() { return gShared + gMethods.length; }
+
+  /*************
+   * Gets the number of frames this checkpoint keeps itself, rather than
+   * sharing with its base
+   */
+  public int getOwnFrames() { return gMethods.length; }
+
+  /*************
+   * Gets the checkpoint this one shares its bottom frames with
+   * @return the base, or null if this one keeps all its frames itself
+   */
+  public ProgramCheckpoint getBase() { return gBase; }
+
+  /*************
+   * Gets the number of bases getFrames() has to follow
+   */
+  public int getChain() { return gChain; }
+
+  /*************
+   * Gets the number of steps the program had taken
+   */
+  public long getSteps() { return gSteps; }
+
+  /*************
+   * Gets the number of status messages the program had produced
+   */
+  public long getOutputs() { return gOutputs; }
+
+  /*************
+   * Returns true if the program had called main
+   */
+  public boolean isStarted() { return bStarted; }
+
+  /*************
+   * Returns true if the program had finished
+   */
+  public boolean isFinished() { return bFinished; }
+
+  /*************
+   * Returns true if the program had overflowed its stack
+   */
+  public boolean isStackOverflowed() { return bOverflowed; }
+}
@@ -0,0 +1,51 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/*****************
+ * ProgramGenerator - writes large programs for timing the loader and the
+ * syntax checkers. Each method calls the next and holds prints, nested
+ * blocks and comments with stray delimiters, so a generated program is
+ * well formed however many methods it has. LoaderBenchmark and the JMH
+ * ParserBenchmark both time these programs.
+ *
+ * Usage: java ProgramGenerator methods file.fakejava
+ * @author Andy
+ *
+ */
+public class ProgramGenerator {
+
+  private ProgramGenerator() { }
+
+  /*************
+   * Writes a program with the given number of methods
+   * @param mFile the file to write
+   * @param mMethods the number of methods
+   * @throws IOException if the file can't be written
+   */
+  public static void generate(File mFile, int mMethods) throws IOException {
+    try (BufferedWriter tOut = new BufferedWriter(new FileWriter(mFile))) {
+      for(int i = 0; i < mMethods; i++) {
+        tOut.write("def m" + i + "() {\n");
+        tOut.write("  // method " + i + " of a generated program ( [ {\n");
+        tOut.write("  print \"step one of m" + i + "\"\n");
+        tOut.write("  int[] a = new int[" + (i % 10) + "];\n");
+        tOut.write("  if (a[0] == 0) {\n");
+        tOut.write("    print \"nested block\"\n");
+        tOut.write("  }\n");
+        if(i + 1 < mMethods) { tOut.write("  m" + (i + 1) + "();\n"); }
+        tOut.write("  print \"done\" // trailing comment ]\n");
+        tOut.write("}\n\n");
+      }
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if(args.length != 2) {
+      System.err.println("Usage: java ProgramGenerator methods file.fakejava");
+      System.exit(1);
+    }
+    generate(new File(args[1]), Integer.parseInt(args[0]));
+  }
+}
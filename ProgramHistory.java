@@ -0,0 +1,287 @@
+/*****************
+ * ProgramHistory - lets a running Program step backwards. It takes a
+ * ProgramCheckpoint every so often as the program runs forward; stepping
+ * back restores the last checkpoint before the step wanted and runs forward
+ * from there to it.
+ *
+ * Like SimulationStats, it sits in front of a program's real listener and
+ * passes every event on: create the Program with a ProgramHistory wrapping
+ * that listener, give the program to setProgram(), and step it with step().
+ * While it restores and re-runs the program it passes nothing on, so
+ * listeners don't see the steps twice; they have to be told the restored
+ * state some other way (SimulationWorker.stepBack() does that).
+ *
+ * Checkpoints and restores are both cheap, however deep the stack: counting
+ * pushes and pops, the history knows how far down the stack the program
+ * has been since the checkpoint it last passed. Frames below that haven't
+ * changed, so the next checkpoint shares them with that one instead of
+ * copying them, and restoring that one leaves them on the stack. The gap
+ * between checkpoints adapts to what they cost: MIN_INTERVAL steps, or one
+ * step per frame the last one copied (thinning included, see below) if
+ * that is more, so copying never takes more than a frame per step.
+ * Stepping back one step then re-runs at most that many steps.
+ *
+ * Memory is bounded by a budget of frames. When the checkpoints hold more
+ * than that, every other one in the older half is dropped, so recent steps
+ * stay quick to get back to and the far past gets sparser. The checkpoints
+ * after a dropped one are copied or rebased so that none of them shares
+ * frames with it any more, and it can be freed. The first checkpoint and
+ * the last two are never dropped, so a stack deeper than the budget is
+ * still kept, once, in the newest of them.
+ * @author Andy
+ *
+ */
+public class ProgramHistory implements SimulationListener {
+
+  public static final int MIN_INTERVAL = 1024;          // fewest steps between checkpoints
+  public static final long DEFAULT_BUDGET = 1L << 21;   // frames kept in all the checkpoints together
+
+  private SimulationListener gListener;         // the listener events are passed on to
+  private Program gProgram;
+  private long gBudget;
+  private ProgramCheckpoint[] gCheckpoints = new ProgramCheckpoint[64];   // oldest first
+  private int gCount;                           // checkpoints held
+  private long gFrames;                         // frames they hold between them
+  private long gNextCheckpoint;                 // the step the next one is due at
+  private long gLastCost;                       // frames copied taking the last one, thinning included
+  private int gDepth;                           // frames on the program's stack
+  private ProgramCheckpoint gAnchor;            // the program has only run forward since this one, or null
+  private int gLowWater;                        // fewest frames on its stack since then
+  private int gAhead;                           // after stepping back, the first checkpoint ahead of the program
+  private boolean bMuted;                       // restoring: pass nothing on
+
+  /***************
+   * Constructor
+   * @param mListener the listener to pass every event on to
+   */
+  public ProgramHistory(SimulationListener mListener) {
+    this(mListener, DEFAULT_BUDGET);
+  }
+
+  /***************
+   * Constructor
+   * @param mListener the listener to pass every event on to
+   * @param mBudget the most frames to keep in checkpoints, all together
+   */
+  public ProgramHistory(SimulationListener mListener, long mBudget) {
+    gListener = mListener;
+    gBudget = Math.max(1, mBudget);
+  }
+
+  /*************
+   * Sets the program to keep the history of, forgetting any other one's.
+   * The program must have been created with this as its listener, and
+   * not have been stepped yet.
+   * @param mProgram the program
+   */
+  public void setProgram(Program mProgram) {
+    gProgram = mProgram;
+    for(int i = 0; i < gCount; i++) { gCheckpoints[i] = null; }
+    gCount = 0;
+    gFrames = 0;
+    gNextCheckpoint = 0;
+    gLastCost = 0;
+    gDepth = 0;
+    gAnchor = null;
+    gAhead = 0;
+  }
+
+  /*************
+   * Rewinds the program to its first step, keeping the checkpoints
+   */
+  public void reset() {
+    gProgram.reset();
+    gDepth = 0;
+    gAnchor = null;
+    aheadOf(-1);
+  }
+
+  /*************
+   * Executes one step of the program, first taking a checkpoint if one is due
+   */
+  public void step() {
+    if(gProgram.getSteps() >= gNextCheckpoint) { checkpoint(); }
+    gProgram.step(this);
+  }
+
+  /*************
+   * Takes the program back mSteps steps, or to its first step. Checkpoints
+   * after that step are kept: the program runs the same way every time,
+   * so they are still good when it steps forward again.
+   * @param mSteps the number of steps to undo
+   */
+  public void stepBack(long mSteps) {
+    long tTarget = Math.max(0, gProgram.getSteps() - Math.max(0, mSteps));
+    // the last checkpoint at or before tTarget; the first is at step 0
+    int tLow = 0;
+    int tHigh = gCount - 1;
+    while(tLow < tHigh) {
+      int tMid = (tLow + tHigh + 1) >>> 1;
+      if(gCheckpoints[tMid].getSteps() <= tTarget) { tLow = tMid; } else { tHigh = tMid - 1; }
+    }
+    bMuted = true;
+    try {
+      if(gCount == 0) {
+        reset();
+      } else {
+        ProgramCheckpoint tCheckpoint = gCheckpoints[tLow];
+        // frames that haven't moved since the checkpoint can stay
+        int tKept = tCheckpoint == gAnchor ? Math.max(0, gLowWater - 1) : 0;
+        gProgram.restore(tCheckpoint, tKept);
+        gDepth = tCheckpoint.getDepth();
+        gAnchor = tCheckpoint;
+        gLowWater = gDepth;
+        aheadOf(tLow);
+      }
+      while(gProgram.getSteps() < tTarget && !gProgram.isFinished()) { gProgram.step(this); }
+    } finally {
+      bMuted = false;
+    }
+  }
+
+  /*************
+   * Takes a checkpoint of the program as it is now, without keeping it.
+   * It shares the frames it can with the checkpoints kept, so it is as
+   * cheap as they are, however deep the stack.
+   * @return the checkpoint
+   */
+  public ProgramCheckpoint capture() {
+    int tShared = 0;
+    if(gAnchor != null && gAnchor.getChain() < gDepth) { tShared = Math.max(0, gLowWater - 1); }
+    return gProgram.checkpoint(gAnchor, tShared);
+  }
+
+  /*************
+   * Gets the number of checkpoints held
+   */
+  public int getCheckpoints() { return gCount; }
+
+  /*************
+   * Gets a checkpoint held
+   * @param mIndex 0 for the oldest, getCheckpoints()-1 for the newest
+   * @return the checkpoint
+   */
+  public ProgramCheckpoint getCheckpoint(int mIndex) {
+    if(mIndex < 0 || mIndex >= gCount) { throw new IndexOutOfBoundsException("" + mIndex); }
+    return gCheckpoints[mIndex];
+  }
+
+  /*************
+   * Gets the number of frames held in all the checkpoints
+   */
+  public long getFramesKept() { return gFrames; }
+
+  private void checkpoint() {
+    long tSteps = gProgram.getSteps();
+    if(gAhead < gCount) {
+      // after stepping back: passing a checkpoint already held
+      ProgramCheckpoint tHeld = gCheckpoints[gAhead];
+      if(tHeld.getSteps() == tSteps) {
+        gAnchor = tHeld;
+        gLowWater = gDepth;
+      }
+      aheadOf(gAhead);
+      return;
+    }
+    ProgramCheckpoint tLast = gCount == 0 ? null : gCheckpoints[gCount - 1];
+    // a long chain of bases would make restoring slower than copying the frames
+    int tShared = 0;
+    if(tLast != null && tLast == gAnchor && tLast.getChain() < gDepth) { tShared = Math.max(0, gLowWater - 1); }
+    ProgramCheckpoint tCheckpoint = gProgram.checkpoint(tLast, tShared);
+    gAnchor = tCheckpoint;
+    gLowWater = gDepth;
+    if(gCount == gCheckpoints.length) {
+      ProgramCheckpoint[] tBigger = new ProgramCheckpoint[2 * gCount];
+      System.arraycopy(gCheckpoints, 0, tBigger, 0, gCount);
+      gCheckpoints = tBigger;
+    }
+    gCheckpoints[gCount++] = tCheckpoint;
+    gFrames += tCheckpoint.getOwnFrames();
+    gLastCost = tCheckpoint.getOwnFrames();
+    while(gFrames > gBudget && thin()) { }
+    aheadOf(gCount - 1);
+  }
+
+  /*************
+   * Notes that the program is at or past checkpoint mIndex but not the
+   * next one, and works out when step() should next take or pass one
+   * @param mIndex the checkpoint, or -1 for none
+   */
+  private void aheadOf(int mIndex) {
+    gAhead = mIndex + 1;
+    if(gAhead < gCount) {
+      gNextCheckpoint = gCheckpoints[gAhead].getSteps();
+    } else if(gCount == 0) {
+      gNextCheckpoint = 0;
+    } else {
+      gNextCheckpoint = gCheckpoints[gCount - 1].getSteps() + Math.max(MIN_INTERVAL, gLastCost);
+    }
+  }
+
+  /*************
+   * Drops every other checkpoint in the older half, keeping the first.
+   * The one after a dropped checkpoint gets its own copies of the frames
+   * it shared with it. Every checkpoint's base is the one held before it,
+   * so the one after that copy is rebased onto the copy, and so on, so
+   * nothing held leads back to a dropped checkpoint.
+   * @return false if there was none to drop
+   */
+  private boolean thin() {
+    int tHalf = gCount / 2;
+    int tKept = 1;
+    ProgramCheckpoint tDropped = null;
+    ProgramCheckpoint tReplaced = null;     // the last checkpoint kept, if it was replaced
+    ProgramCheckpoint tReplacement = null;  // and what replaced it
+    for(int i = 1; i < gCount; i++) {
+      ProgramCheckpoint tCheckpoint = gCheckpoints[i];
+      if(i < tHalf && i % 2 == 1) {
+        gFrames -= tCheckpoint.getOwnFrames();
+        tDropped = tCheckpoint;
+        continue;
+      }
+      ProgramCheckpoint tCopy = tCheckpoint;
+      if(tDropped != null) {
+        // now based on the dropped one's base: the last one kept
+        tCopy = tCopy.without(tDropped);
+        gLastCost += tCopy.getOwnFrames() - tCheckpoint.getOwnFrames();
+        tDropped = null;
+      }
+      if(tReplaced != null) { tCopy = tCopy.rebase(tReplaced, tReplacement); }
+      if(tCopy != tCheckpoint) {
+        gFrames += tCopy.getOwnFrames() - tCheckpoint.getOwnFrames();
+        if(gAnchor == tCheckpoint) { gAnchor = tCopy; }
+        tReplaced = tCheckpoint;
+        tReplacement = tCopy;
+      } else {
+        tReplaced = null;
+      }
+      gCheckpoints[tKept++] = tCopy;
+    }
+    boolean tThinned = tKept < gCount;
+    for(int i = tKept; i < gCount; i++) { gCheckpoints[i] = null; }
+    gCount = tKept;
+    return tThinned;
+  }
+
+  public void methodPushed(Frame mFrame) {
+    gDepth++;
+    if(!bMuted) { gListener.methodPushed(mFrame); }
+  }
+
+  public void methodPopped(Frame mFrame) {
+    if(--gDepth < gLowWater) { gLowWater = gDepth; }
+    if(!bMuted) { gListener.methodPopped(mFrame); }
+  }
+
+  public void outputEmitted(Instruction mInstruction) {
+    if(!bMuted) { gListener.outputEmitted(mInstruction); }
+  }
+
+  public void stackOverflowed(Program mProgram, StackOverflowException mError) {
+    if(!bMuted) { gListener.stackOverflowed(mProgram, mError); }
+  }
+
+  public void programFinished(Program mProgram) {
+    if(!bMuted) { gListener.programFinished(mProgram); }
+  }
+}
@@ -0,0 +1,163 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/******************
+ * ProgramImage - the compiled, read-only form of a program: its name and
+ * its methods. An image holds no execution state, so any number of
+ * Programs can run the same image, and it can be cached between runs.
+ *
+ * @author Andy
+ *
+ */
+public class ProgramImage {
+
+    private final String gName;                    // name of the program's file
+    private final List<Method> gMethodList;        // methods in the order they were defined
+    private final Map<String, Method> gMethodIndex; // the same methods by name
+    private volatile long gStepEstimate = -1;      // computed on first use
+    private volatile long gTailStepEstimate = -1;  // the same with tail calls eliminated
+
+    /** Step estimate of a program that never finishes (it recurses) */
+    public static final long UNBOUNDED = Long.MAX_VALUE;
+
+    /*************
+     * Constructor
+     * @param mName the program's name
+     * @param mMethodList the methods, in definition order
+     * @param mMethodIndex the methods by name
+     */
+    public ProgramImage(String mName, List<Method> mMethodList, Map<String, Method> mMethodIndex) {
+        gName = mName;
+        gMethodList = Collections.unmodifiableList(mMethodList);
+        gMethodIndex = mMethodIndex;
+        for(int i = 0; i < mMethodList.size(); i++) {
+            mMethodList.get(i).setIndex(i);
+        }
+    }
+
+    /*************
+     * Syntax-checks and compiles a program
+     * @param mName the program's name
+     * @param mReader the program source; not closed
+     * @return the compiled image
+     * @throws SyntaxErrorException if a syntax error is encountered
+     * @throws IOException if the reader fails
+     */
+    public static ProgramImage read(String mName, Reader mReader) throws SyntaxErrorException, IOException {
+        ProgramLexer tLexer = new ProgramLexer();
+        tLexer.lex(mReader);
+        return new ProgramImage(mName, tLexer.getMethodList(), tLexer.getMethodIndex());
+    }
+
+    /***********
+     * Gets the name of this program
+     * @return the name
+     */
+    public String getName() { return gName; }
+
+    /***********
+     * Gets the methods in the order they were defined. The first one is main.
+     * @return the method list
+     */
+    public List<Method> getMethodList() { return gMethodList; }
+
+    /***********
+     * Gets a method given a name
+     * @param mName the name of the Method to retrieve
+     * @return the method, or null if there is none
+     */
+    public Method getMethod(String mName) { return gMethodIndex.get(mName); }
+
+    /***********
+     * Gets the number of steps this program takes to finish, including the
+     * step that notices it has finished. The language has no branches, so this
+     * is exact; a program whose call graph has a cycle returns UNBOUNDED.
+     * @return the step count, with tail calls not eliminated
+     */
+    public long getStepEstimate() {
+        return getStepEstimate(false);
+    }
+
+    /***********
+     * Gets the number of steps this program takes to finish, as getStepEstimate()
+     * does, run with or without tail-call elimination. Eliminating a tail call
+     * saves the caller's trailing NOPs and the step that pops it.
+     * @param mTailCalls tail calls are eliminated
+     * @return the step count
+     */
+    public long getStepEstimate(boolean mTailCalls) {
+        if(mTailCalls) {
+            if(gTailStepEstimate < 0) { gTailStepEstimate = estimate(true); }
+            return gTailStepEstimate;
+        }
+        if(gStepEstimate < 0) { gStepEstimate = estimate(false); }
+        return gStepEstimate;
+    }
+
+    private long estimate(boolean mTailCalls) {
+        return gMethodList.isEmpty() ? 1 : add(methodSteps(gMethodList.get(0), mTailCalls), 1);
+    }
+
+    /***********
+     * Steps taken by one call to mRoot: one per instruction, the steps of
+     * every method it calls, and one to pop it. Walks the call graph with an
+     * explicit stack, since generated programs can chain very many methods.
+     */
+    private long methodSteps(Method mRoot, boolean mTailCalls) {
+        Map<Method, Long> tDone = new HashMap<Method, Long>();
+        Map<Method, Boolean> tOnPath = new HashMap<Method, Boolean>();
+        CircularArrayDequeImplementation<Method> tPath = new CircularArrayDequeImplementation<Method>();
+        CircularIntArrayDeque tNext = new CircularIntArrayDeque();   // next instruction to visit, per path entry
+        CircularArrayDequeImplementation<Long> tSum = new CircularArrayDequeImplementation<Long>();
+
+        tPath.addFront(mRoot); tNext.addFront(0); tSum.addFront(ownSteps(mRoot, mTailCalls));
+        tOnPath.put(mRoot, true);
+        while(true) {
+            Method tMethod = tPath.peekFront();
+            int i = tNext.removeFront();
+            while(i < tMethod.getLength() && tMethod.getInstruction(i).getKind() != Instruction.CALL) { i++; }
+            if(i < tMethod.getLength()) {
+                tNext.addFront(i + 1);
+                Method tCallee = tMethod.getInstruction(i).getCallee();
+                Long tKnown = tDone.get(tCallee);
+                if(tKnown != null || tOnPath.containsKey(tCallee)) {
+                    long tSteps = tKnown != null ? tKnown : UNBOUNDED;
+                    tSum.addFront(add(tSum.removeFront(), tSteps));
+                } else {
+                    tPath.addFront(tCallee); tNext.addFront(0); tSum.addFront(ownSteps(tCallee, mTailCalls));
+                    tOnPath.put(tCallee, true);
+                }
+            } else {
+                long tSteps = tSum.removeFront();
+                tPath.removeFront();
+                tOnPath.remove(tMethod);
+                tDone.put(tMethod, tSteps);
+                if(tPath.isEmpty()) { return tSteps; }
+                tSum.addFront(add(tSum.removeFront(), tSteps));
+            }
+        }
+    }
+
+    /***********
+     * Steps a call to mMethod takes itself, leaving out the methods it calls:
+     * one per instruction and one to pop it, or, if its tail call is
+     * eliminated, one per instruction up to that call
+     */
+    private static long ownSteps(Method mMethod, boolean mTailCalls) {
+        if(mTailCalls) {
+            for(int i = mMethod.getLength() - 1; i >= 0; i--) {
+                if(mMethod.getInstruction(i).isTailCall()) { return i + 1; }
+            }
+        }
+        return (long) mMethod.getLength() + 1;
+    }
+
+    private static long add(long a, long b) {
+        return (a == UNBOUNDED || b == UNBOUNDED || a + b < 0) ? UNBOUNDED : a + b;
+    }
+}
@@ -0,0 +1,196 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/******************
+ * ProgramLexer - reads a program in a single streaming pass. While it reads,
+ * it checks that parentheses (), brackets [] and squiggly-brackets {} match,
+ * skips // comments, and builds the program's method table.
+ *
+ * Only the current line and the bodies of methods are kept in memory, and
+ * the def pattern is only tried on lines that start with "def ", so loading
+ * is linear in the size of the file.
+ *
+ * @author Andy
+ *
+ */
+public class ProgramLexer {
+
+    private static final Pattern DEF_PATTERN = Pattern.compile("def .*?(\\w*)\\(.*?\\)\\s*(\\{?)");
+    private static final int BUFFER_SIZE = 8192;
+
+    private CircularCharArrayDeque gOpenDelimiters;   // delimiters waiting to be closed
+    private StringBuilder gLine;           // text of the line being read
+    private int gLineNumber;               // number of the line being read, from 1
+    private int gLastCodeLine;             // last line that held anything but whitespace
+    private boolean bAfterSlash;           // previous character was a '/'
+    private boolean bInComment;            // rest of this line is a comment
+    private boolean bAfterCR;              // previous character ended a line with '\r'
+    private int gBraceDelta;               // {'s minus }'s on this line, outside comments
+
+    private Method gMethod;                // method whose body is being read, or null
+    private int gBracketCounter;           // open {'s in that method's body
+    private List<Method> gMethodList;
+    private Map<String, Method> gMethodIndex;
+
+    /*************
+     * Constructor
+     */
+    public ProgramLexer() {
+        gOpenDelimiters = new CircularCharArrayDeque();
+        gLine = new StringBuilder();
+        gLineNumber = 1;
+        gMethodList = new LinkedList<Method>();
+        gMethodIndex = new HashMap<String, Method>();
+    }
+
+    /*************
+     * Reads the whole program from the given reader. The reader is not closed.
+     * When this returns, every method has been compiled.
+     * @param mReader the program source
+     * @throws SyntaxErrorException if the delimiters don't match, with a helpful message.
+     * @throws IOException if the reader fails
+     */
+    public void lex(Reader mReader) throws SyntaxErrorException, IOException {
+        char[] tBuffer = new char[BUFFER_SIZE];
+        int tCount;
+        while((tCount = mReader.read(tBuffer)) != -1) {
+            for(int i = 0; i < tCount; i++) {
+                nextChar(tBuffer[i]);
+            }
+        }
+        if(gLine.length() > 0) { endLine(); }
+        if(gMethod != null) { endMethod(); }
+
+        // if there are unmatched delimiters left in the deque
+        if(!gOpenDelimiters.isEmpty()) {
+            throw new SyntaxErrorException("Error: delimiter not closed at line " + gLastCodeLine);
+        }
+
+        for(Method tMethod: gMethodList) {
+            tMethod.compile(gMethodIndex);
+        }
+    }
+
+    /*************
+     * Gets the methods in the order they were defined
+     * @return the method list
+     */
+    public List<Method> getMethodList() { return gMethodList; }
+
+    /*************
+     * Gets the methods by name; the first definition of a name wins
+     * @return the method index
+     */
+    public Map<String, Method> getMethodIndex() { return gMethodIndex; }
+
+    private void nextChar(char mChar) throws SyntaxErrorException {
+        if(mChar == '\n') {
+            if(!bAfterCR) { endLine(); }
+            bAfterCR = false;
+            return;
+        }
+        bAfterCR = false;
+        if(mChar == '\r') {
+            endLine();
+            bAfterCR = true;
+            return;
+        }
+
+        gLine.append(mChar);
+        if(!Character.isWhitespace(mChar)) { gLastCodeLine = gLineNumber; }
+        if(bInComment) { return; }
+
+        // ignore comments by skipping the rest of the line
+        if(mChar == '/') {
+            if(bAfterSlash) { bInComment = true; }
+            bAfterSlash = true;
+            return;
+        }
+        bAfterSlash = false;
+
+        // check delimiters
+        switch(mChar) {
+            case '{':
+                gBraceDelta++;
+                openDelimiter(mChar);
+                break;
+            case '(': case '[':
+                openDelimiter(mChar);
+                break;
+            case '}':
+                gBraceDelta--;
+                closeDelimiter(mChar);
+                break;
+            case ')': case ']':
+                closeDelimiter(mChar);
+                break;
+            default: break; // Ignore unexpected characters
+        }
+    }
+
+    private void openDelimiter(char mChar) {
+        gOpenDelimiters.addFront(mChar);
+    }
+
+    private void closeDelimiter(char mChar) throws SyntaxErrorException {
+        if(gOpenDelimiters.isEmpty()) {
+            throw new SyntaxErrorException("Error: unmatched closed delimiter: " + mChar + " at line " + gLineNumber);
+        }
+        char tOpen = gOpenDelimiters.removeFront();
+        if(!isPaired(tOpen, mChar)) {
+            throw new SyntaxErrorException("Error: delimiters not paired: " + tOpen + " and " + mChar + " at line " + gLineNumber);
+        }
+    }
+
+    /*************
+     * Called at the end of every line: either adds the line to the method
+     * being read, or checks whether it starts a new method.
+     */
+    private void endLine() {
+        if(gMethod != null) {
+            gMethod.addLine(gLine.toString());
+            gBracketCounter += gBraceDelta;
+            if(gBracketCounter <= 0) { endMethod(); }
+        } else if(startsWithDef(gLine)) {
+            Matcher tM1 = DEF_PATTERN.matcher(gLine);
+            if(tM1.matches()) {
+                gMethod = new Method(tM1.group(1));
+                gBracketCounter = tM1.group(2).equals("{") ? 1 : 0;
+                if(gBracketCounter == 0) { endMethod(); }
+            }
+        }
+        gLine.setLength(0);
+        gLineNumber++;
+        gBraceDelta = 0;
+        bAfterSlash = false;
+        bInComment = false;
+    }
+
+    private void endMethod() {
+        gMethodList.add(gMethod);
+        gMethodIndex.putIfAbsent(gMethod.getName(), gMethod);
+        gMethod = null;
+    }
+
+    private static boolean startsWithDef(StringBuilder mLine) {
+        return mLine.length() >= 4 && mLine.charAt(0) == 'd' && mLine.charAt(1) == 'e'
+                && mLine.charAt(2) == 'f' && mLine.charAt(3) == ' ';
+    }
+
+    /**
+     * Returns true if the given characters, open and close, form a pair
+     * of parentheses, brackets, or braces.
+     */
+    private static boolean isPaired(char open, char close) {
+        return (open == '(' && close == ')') ||
+            (open == '[' && close == ']') ||
+            (open == '{' && close == '}');
+    }
+}
@@ -0,0 +1,287 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/*****************
+ * ProgramSnapshot - everything needed to carry on running a Program in
+ * another JVM: its compiled methods, every frame on its call stack with its
+ * instruction pointer, its flags and settings, and the steps it has taken
+ * and status messages it has produced. A program resumed from a snapshot
+ * goes on to produce exactly the status messages the original would have.
+ *
+ * Taking a snapshot only takes a ProgramCheckpoint, which is immutable, so
+ * the program can go on running while writeInBackground() streams it out.
+ * Taken through a ProgramHistory, the checkpoint shares frames with the
+ * history's own and costs next to nothing however deep the stack.
+ *
+ * A snapshot file is the bytes "VMSN" and a version byte, then, written
+ * with a DataOutputStream:
+ *   the program's name
+ *   a byte of flags: started, finished, overflowed and tail calls
+ *   the memory limit, steps taken and status messages produced (longs)
+ *   the number of methods; each one's name, line count and lines
+ *   the number of frames; each one's method number and instruction
+ *     pointer (ints), bottom of the stack first
+ * The lines are rebuilt from the compiled instructions, and compile to the
+ * same instructions again when read.
+ * @author Andy
+ *
+ */
+public class ProgramSnapshot {
+
+  public static final byte[] MAGIC = { 'V', 'M', 'S', 'N' };
+  public static final int VERSION = 1;
+
+  private static final int STARTED = 1;
+  private static final int FINISHED = 2;
+  private static final int OVERFLOWED = 4;
+  private static final int TAIL_CALLS = 8;
+  private static final int BLOCK = 1 << 12;          // frames copied out of the checkpoint at a time
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final ProgramImage gImage;
+  private final ProgramCheckpoint gCheckpoint;
+  private final boolean bTailCalls;
+  private final long gMemoryLimit;
+
+  /***************
+   * Constructor
+   * @param mImage the program's compiled methods
+   * @param mCheckpoint the program's state
+   * @param mTailCalls tail calls are eliminated
+   * @param mMemoryLimit the program's memory limit
+   */
+  public ProgramSnapshot(ProgramImage mImage, ProgramCheckpoint mCheckpoint, boolean mTailCalls, long mMemoryLimit) {
+    gImage = mImage;
+    gCheckpoint = mCheckpoint;
+    bTailCalls = mTailCalls;
+    gMemoryLimit = mMemoryLimit;
+  }
+
+  /*************
+   * Takes a snapshot of a program between steps. Copies its whole stack.
+   * @param mProgram the program
+   * @return the snapshot
+   */
+  public static ProgramSnapshot take(Program mProgram) {
+    return new ProgramSnapshot(mProgram.getImage(), mProgram.checkpoint(), mProgram.isTailCallElimination(),
+        mProgram.getMemoryLimit());
+  }
+
+  /*************
+   * Takes a snapshot of a program stepped by a ProgramHistory, copying
+   * only the frames the history hasn't got already
+   * @param mProgram the program
+   * @param mHistory the history it is stepped with
+   * @return the snapshot
+   */
+  public static ProgramSnapshot take(Program mProgram, ProgramHistory mHistory) {
+    return new ProgramSnapshot(mProgram.getImage(), mHistory.capture(), mProgram.isTailCallElimination(),
+        mProgram.getMemoryLimit());
+  }
+
+  /*************
+   * Gets the compiled program
+   */
+  public ProgramImage getImage() { return gImage; }
+
+  /*************
+   * Gets the program's state
+   */
+  public ProgramCheckpoint getCheckpoint() { return gCheckpoint; }
+
+  /*************
+   * Gets the number of steps the program had taken
+   */
+  public long getSteps() { return gCheckpoint.getSteps(); }
+
+  /*************
+   * Creates a program in the state this snapshot was taken in
+   * @param mListener the listener that receives the program's events; it
+   *   isn't told about the frames already on the stack
+   * @return the program, ready for its next step
+   */
+  public Program resume(SimulationListener mListener) {
+    Program tProg = new Program(gImage, mListener);
+    tProg.setTailCallElimination(bTailCalls);
+    if(gMemoryLimit != Long.MAX_VALUE) { tProg.setMemoryLimit(gMemoryLimit); }
+    tProg.restore(gCheckpoint);
+    return tProg;
+  }
+
+  /*************
+   * Writes this snapshot to a file, replacing it only once the whole
+   * snapshot is written, so a crash part way through leaves the last one
+   * @param mFile the file
+   * @throws IOException if it can't be written
+   */
+  public void write(File mFile) throws IOException {
+    File tPart = new File(mFile.getPath() + ".part");
+    try(OutputStream tOut = new FileOutputStream(tPart)) {
+      write(tOut);
+    }
+    Files.move(tPart.toPath(), mFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /*************
+   * Writes this snapshot to a file on a thread of its own. The program it
+   * was taken from can go on running meanwhile.
+   * @param mFile the file
+   * @return the write: done once the file is in place, and get() throws
+   *   an ExecutionException holding the IOException if it failed
+   */
+  public Future<File> writeInBackground(final File mFile) {
+    FutureTask<File> tTask = new FutureTask<File>(new Callable<File>() {
+      public File call() throws IOException {
+        write(mFile);
+        return mFile;
+      }
+    });
+    Thread tThread = new Thread(tTask, "Snapshot writer");
+    tThread.start();
+    return tTask;
+  }
+
+  /*************
+   * Writes this snapshot to a stream, streaming the frames out a block at
+   * a time. The stream isn't closed.
+   * @param mOut the stream
+   * @throws IOException if the stream fails
+   */
+  public void write(OutputStream mOut) throws IOException {
+    DataOutputStream tOut = new DataOutputStream(new BufferedOutputStream(mOut, BUFFER_SIZE));
+    tOut.write(MAGIC);
+    tOut.writeByte(VERSION);
+    tOut.writeUTF(gImage.getName());
+    int tFlags = (gCheckpoint.isStarted() ? STARTED : 0) | (gCheckpoint.isFinished() ? FINISHED : 0)
+        | (gCheckpoint.isStackOverflowed() ? OVERFLOWED : 0) | (bTailCalls ? TAIL_CALLS : 0);
+    tOut.writeByte(tFlags);
+    tOut.writeLong(gMemoryLimit);
+    tOut.writeLong(gCheckpoint.getSteps());
+    tOut.writeLong(gCheckpoint.getOutputs());
+
+    List<Method> tMethods = gImage.getMethodList();
+    tOut.writeInt(tMethods.size());
+    for(Method tMethod: tMethods) {
+      tOut.writeUTF(tMethod.getName());
+      tOut.writeInt(tMethod.getLength());
+      for(int i = 0; i < tMethod.getLength(); i++) { tOut.writeUTF(tMethod.getInstruction(i).getSource()); }
+    }
+
+    int tDepth = gCheckpoint.getDepth();
+    tOut.writeInt(tDepth);
+    Method[] tBlock = new Method[Math.min(BLOCK, tDepth)];
+    int[] tTicks = new int[tBlock.length];
+    for(int tFrom = 0; tFrom < tDepth; ) {
+      int tCount = gCheckpoint.getFrames(tFrom, tBlock, tTicks);
+      for(int i = 0; i < tCount; i++) {
+        tOut.writeInt(tBlock[i].getIndex());
+        tOut.writeInt(tTicks[i]);
+      }
+      tFrom += tCount;
+    }
+    tOut.flush();
+  }
+
+  /*************
+   * Returns true if the file starts like a snapshot
+   * @param mFile the file
+   */
+  public static boolean isSnapshot(File mFile) {
+    try(InputStream tIn = new FileInputStream(mFile)) {
+      byte[] tMagic = new byte[MAGIC.length];
+      return tIn.read(tMagic) == tMagic.length && Arrays.equals(tMagic, MAGIC);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /*************
+   * Reads a snapshot written by write()
+   * @param mFile the file
+   * @return the snapshot
+   * @throws IOException if the file can't be read, isn't a snapshot, was
+   *   written by a later version or is cut short
+   */
+  public static ProgramSnapshot read(File mFile) throws IOException {
+    try(InputStream tIn = new FileInputStream(mFile)) {
+      return read(tIn);
+    }
+  }
+
+  /*************
+   * Reads a snapshot written by write(). The stream isn't closed.
+   * @param mIn the stream
+   * @return the snapshot
+   * @throws IOException if the stream fails, isn't a snapshot, was written
+   *   by a later version or is cut short
+   */
+  public static ProgramSnapshot read(InputStream mIn) throws IOException {
+    try {
+      return read(new DataInputStream(new BufferedInputStream(mIn, BUFFER_SIZE)));
+    } catch (EOFException e) {
+      throw new IOException("Snapshot is cut short", e);
+    }
+  }
+
+  private static ProgramSnapshot read(DataInputStream mIn) throws IOException {
+    byte[] tMagic = new byte[MAGIC.length];
+    mIn.readFully(tMagic);
+    if(!Arrays.equals(tMagic, MAGIC)) { throw new IOException("Not a program snapshot"); }
+    int tVersion = mIn.readUnsignedByte();
+    if(tVersion > VERSION) {
+      throw new IOException("Snapshot version " + tVersion + " is newer than this simulator reads (" + VERSION + ")");
+    }
+    String tName = mIn.readUTF();
+    int tFlags = mIn.readUnsignedByte();
+    long tMemoryLimit = mIn.readLong();
+    long tSteps = mIn.readLong();
+    long tOutputs = mIn.readLong();
+
+    int tCount = mIn.readInt();
+    List<Method> tMethods = new ArrayList<Method>();
+    Map<String, Method> mIndex = new HashMap<String, Method>();
+    for(int i = 0; i < tCount; i++) {
+      Method tMethod = new Method(mIn.readUTF());
+      int tLines = mIn.readInt();
+      for(int j = 0; j < tLines; j++) { tMethod.addLine(mIn.readUTF()); }
+      tMethods.add(tMethod);
+      mIndex.putIfAbsent(tMethod.getName(), tMethod);
+    }
+    for(Method tMethod: tMethods) { tMethod.compile(mIndex); }
+    ProgramImage tImage = new ProgramImage(tName, tMethods, mIndex);
+
+    int tDepth = mIn.readInt();
+    if(tDepth < 0) { throw new IOException("Bad stack depth " + tDepth); }
+    Frame[] tFrames = new Frame[tDepth];
+    for(int i = 0; i < tDepth; i++) {
+      int tMethod = mIn.readInt();
+      int tTicks = mIn.readInt();
+      if(tMethod < 0 || tMethod >= tCount || tTicks < 0 || tTicks > tMethods.get(tMethod).getLength()) {
+        throw new IOException("Bad frame " + i + " in snapshot");
+      }
+      tFrames[i] = new Frame(tMethods.get(tMethod), tTicks);
+    }
+    ProgramCheckpoint tCheckpoint = new ProgramCheckpoint(null, 0, tFrames, tSteps, tOutputs,
+        (tFlags & STARTED) != 0, (tFlags & FINISHED) != 0, (tFlags & OVERFLOWED) != 0);
+    return new ProgramSnapshot(tImage, tCheckpoint, (tFlags & TAIL_CALLS) != 0, tMemoryLimit);
+  }
+}
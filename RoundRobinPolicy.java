@@ -0,0 +1,20 @@
+import java.util.List;
+
+/*****************
+ * RoundRobinPolicy - runs every program in turn: the one that has waited
+ * longest since its last slice goes next.
+ * @author Andy
+ *
+ */
+public class RoundRobinPolicy implements SchedulingPolicy {
+
+  public ScheduledProgram choose(List<ScheduledProgram> mReady) {
+    ScheduledProgram tBest = null;
+    for(ScheduledProgram tProg: mReady) {
+      if(tBest == null || tProg.getLastRun() < tBest.getLastRun()) { tBest = tProg; }
+    }
+    return tBest;
+  }
+
+  public String toString() { return "round-robin"; }
+}
@@ -0,0 +1,139 @@
+/*****************
+ * ScheduledProgram - a Program held by a Scheduler, together with its
+ * scheduling parameters and the statistics the scheduler keeps for it.
+ * Times are measured in scheduler steps: the total number of steps the
+ * scheduler has executed, across all of its programs.
+ * @author Andy
+ *
+ */
+public class ScheduledProgram {
+
+  private Program gProgram;
+  private SimulationListener gListener;   // receives this program's output
+  private int gPriority;                  // larger runs first under PriorityPolicy
+  private int gQuota;                     // most steps per time slice
+  private long gArrival;                  // scheduler time when added
+  private long gStartSteps;               // steps the program had taken when added
+  private long gFinishedAt = -1;          // scheduler time when finished, or -1
+  private long gLastRun;                  // scheduler time when its last slice ended
+  private long gSlices;                   // number of time slices it has had
+  private long gRunNanos;                 // wall-clock time spent running it
+
+  /***************
+   * Constructor
+   * @param mProgram the program to run
+   * @param mListener the listener its steps report to
+   * @param mPriority its priority
+   * @param mQuota the most steps it may run per time slice
+   * @param mArrival the scheduler time it was added at
+   */
+  public ScheduledProgram(Program mProgram, SimulationListener mListener, int mPriority, int mQuota, long mArrival) {
+    gProgram = mProgram;
+    gListener = mListener;
+    gPriority = mPriority;
+    gQuota = mQuota;
+    gArrival = mArrival;
+    gLastRun = mArrival;
+    gStartSteps = mProgram.getSteps();
+    if(mProgram.isFinished()) { gFinishedAt = mArrival; }
+  }
+
+  /*************
+   * Gets the program being scheduled
+   */
+  public Program getProgram() { return gProgram; }
+
+  /*************
+   * Gets the listener the program's steps report to
+   */
+  public SimulationListener getListener() { return gListener; }
+
+  /*************
+   * Gets this program's priority; larger runs first under PriorityPolicy
+   */
+  public int getPriority() { return gPriority; }
+
+  /*************
+   * Gets the most steps this program may run per time slice
+   */
+  public int getQuota() { return gQuota; }
+
+  /*************
+   * Sets the most steps this program may run per time slice
+   * @param mQuota the quota, at least 1
+   */
+  public void setQuota(int mQuota) { gQuota = Math.max(1, mQuota); }
+
+  /*************
+   * Gets the number of steps this program has executed, including any it
+   * took before it was added to the scheduler
+   */
+  public long getSteps() { return gProgram.getSteps(); }
+
+  /*************
+   * Gets the number of steps this program has executed since it was added
+   * to the scheduler
+   */
+  public long getScheduledSteps() { return gProgram.getSteps() - gStartSteps; }
+
+  /*************
+   * Gets the number of steps left before this program finishes, or
+   * ProgramImage.UNBOUNDED if it never will
+   */
+  public long getRemainingSteps() {
+    long tTotal = gProgram.getImage().getStepEstimate(gProgram.isTailCallElimination());
+    return tTotal == ProgramImage.UNBOUNDED ? tTotal : Math.max(0, tTotal - getSteps());
+  }
+
+  /*************
+   * Gets the scheduler time this program was added at
+   */
+  public long getArrival() { return gArrival; }
+
+  /*************
+   * Gets the scheduler time its last time slice ended at, or its arrival
+   * if it hasn't had one
+   */
+  public long getLastRun() { return gLastRun; }
+
+  /*************
+   * Gets the number of time slices this program has had
+   */
+  public long getSlices() { return gSlices; }
+
+  /*************
+   * Returns true once the program has finished
+   */
+  public boolean isFinished() { return gFinishedAt >= 0; }
+
+  /*************
+   * Gets the scheduler steps between this program being added and finishing
+   * (or now, if it hasn't finished)
+   * @param mNow the current scheduler time
+   */
+  public long getTurnaround(long mNow) { return (isFinished() ? gFinishedAt : mNow) - gArrival; }
+
+  /*************
+   * Gets the scheduler steps this program spent ready to run but waiting
+   * for other programs: its turnaround less the steps it ran in that time
+   * @param mNow the current scheduler time
+   */
+  public long getWaitTime(long mNow) { return getTurnaround(mNow) - getScheduledSteps(); }
+
+  /*************
+   * Gets how many steps per second this program ran at while it had the VM
+   */
+  public double getThroughput() { return gRunNanos == 0 ? 0 : getScheduledSteps() * 1e9 / gRunNanos; }
+
+  /*************
+   * Records a time slice that has just ended. Called by the Scheduler.
+   * @param mNow the scheduler time at the end of the slice
+   * @param mNanos how long the slice took
+   */
+  void sliceEnded(long mNow, long mNanos) {
+    gSlices++;
+    gRunNanos += mNanos;
+    gLastRun = mNow;
+    if(gProgram.isFinished()) { gFinishedAt = mNow; }
+  }
+}
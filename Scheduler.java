@@ -0,0 +1,150 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*****************
+ * Scheduler - time-slices several Programs on one simulated VM. Each
+ * program keeps its own call stack; the scheduler repeatedly asks its
+ * SchedulingPolicy which program to run, and runs it for up to its quota
+ * of steps (or until it finishes).
+ *
+ * Scheduler time is the total number of steps executed across all programs.
+ * @author Andy
+ *
+ */
+public class Scheduler {
+
+  public static final int DEFAULT_QUOTA = 10;
+
+  private SchedulingPolicy gPolicy;
+  private int gDefaultQuota;
+  private List<ScheduledProgram> gPrograms;    // every program, in the order added
+  private List<ScheduledProgram> gReady;       // programs that haven't finished
+  private long gClock;                         // steps executed so far
+  private long gStartNanos = -1;               // when the first slice started
+
+  /***************
+   * Constructor
+   * @param mPolicy decides which program runs next
+   * @param mDefaultQuota steps per time slice for programs added without a quota
+   */
+  public Scheduler(SchedulingPolicy mPolicy, int mDefaultQuota) {
+    gPolicy = mPolicy;
+    gDefaultQuota = Math.max(1, mDefaultQuota);
+    gPrograms = new ArrayList<ScheduledProgram>();
+    gReady = new ArrayList<ScheduledProgram>();
+  }
+
+  /*************
+   * Gets a policy by name: "rr" (round-robin), "priority" or "srt"
+   * (shortest remaining steps)
+   * @param mName the name
+   * @return the policy, or null if the name is unknown
+   */
+  public static SchedulingPolicy policy(String mName) {
+    if(mName.equals("rr")) { return new RoundRobinPolicy(); }
+    if(mName.equals("priority")) { return new PriorityPolicy(); }
+    if(mName.equals("srt")) { return new ShortestRemainingPolicy(); }
+    return null;
+  }
+
+  /*************
+   * Adds a program with the default quota
+   * @param mProgram the program; it must have been created with mListener
+   * @param mListener the listener its steps report to
+   * @param mPriority its priority (larger runs first under PriorityPolicy)
+   * @return the scheduled program
+   */
+  public ScheduledProgram add(Program mProgram, SimulationListener mListener, int mPriority) {
+    return add(mProgram, mListener, mPriority, gDefaultQuota);
+  }
+
+  /*************
+   * Adds a program
+   * @param mProgram the program; it must have been created with mListener
+   * @param mListener the listener its steps report to
+   * @param mPriority its priority (larger runs first under PriorityPolicy)
+   * @param mQuota the most steps it may run per time slice
+   * @return the scheduled program
+   */
+  public ScheduledProgram add(Program mProgram, SimulationListener mListener, int mPriority, int mQuota) {
+    ScheduledProgram tProg = new ScheduledProgram(mProgram, mListener, mPriority, Math.max(1, mQuota), gClock);
+    gPrograms.add(tProg);
+    if(!mProgram.isFinished()) { gReady.add(tProg); }
+    return tProg;
+  }
+
+  /*************
+   * Runs one time slice
+   * @return false if every program had already finished
+   */
+  public boolean runSlice() {
+    if(gReady.isEmpty()) { return false; }
+    if(gStartNanos < 0) { gStartNanos = System.nanoTime(); }
+
+    ScheduledProgram tProg = gPolicy.choose(gReady);
+    Program tProgram = tProg.getProgram();
+    SimulationListener tListener = tProg.getListener();
+    int tQuota = tProg.getQuota();
+    long tStart = System.nanoTime();
+    int tSteps = 0;
+    while(tSteps < tQuota && !tProgram.isFinished()) {
+      tProgram.step(tListener);
+      tSteps++;
+    }
+    gClock += tSteps;
+    tProg.sliceEnded(gClock, System.nanoTime() - tStart);
+    if(tProg.isFinished()) { gReady.remove(tProg); }
+    return true;
+  }
+
+  /*************
+   * Runs time slices until every program has finished or mMaxSteps
+   * scheduler steps have been executed
+   * @param mMaxSteps the most steps to run
+   */
+  public void run(long mMaxSteps) {
+    while(gClock < mMaxSteps && runSlice()) { }
+  }
+
+  /*************
+   * Returns true once every program has finished
+   */
+  public boolean isFinished() { return gReady.isEmpty(); }
+
+  /*************
+   * Gets the scheduler time: the steps executed across all programs
+   */
+  public long getClock() { return gClock; }
+
+  /*************
+   * Gets every program added, in order
+   */
+  public List<ScheduledProgram> getPrograms() { return Collections.unmodifiableList(gPrograms); }
+
+  /*************
+   * Builds a table of per-program statistics: steps run under this
+   * scheduler, slices, turnaround and wait time (in scheduler steps) and
+   * steps per second while running
+   * @return the report
+   */
+  public String report() {
+    StringBuilder tOut = new StringBuilder();
+    tOut.append("policy: ").append(gPolicy).append(", ").append(gClock).append(" steps");
+    if(gStartNanos >= 0) {
+      long tElapsed = Math.max(1, System.nanoTime() - gStartNanos);
+      tOut.append(" in ").append(tElapsed / 1000000).append(" ms (")
+          .append((long) (gClock * 1e9 / tElapsed)).append(" steps/sec)");
+    }
+    tOut.append('\n');
+    tOut.append(String.format("%-34s %5s %6s %12s %8s %12s %12s %14s%n",
+        "program", "prio", "quota", "steps", "slices", "turnaround", "wait", "steps/sec"));
+    for(ScheduledProgram tProg: gPrograms) {
+      tOut.append(String.format("%-34s %5d %6d %12d %8d %12d %12d %14.0f%s%n",
+          tProg.getProgram().getName(), tProg.getPriority(), tProg.getQuota(), tProg.getScheduledSteps(),
+          tProg.getSlices(), tProg.getTurnaround(gClock), tProg.getWaitTime(gClock),
+          tProg.getThroughput(), tProg.isFinished() ? "" : "  (not finished)"));
+    }
+    return tOut.toString();
+  }
+}
@@ -0,0 +1,16 @@
+import java.util.List;
+
+/*****************
+ * SchedulingPolicy - decides which program a Scheduler runs next.
+ * @author Andy
+ *
+ */
+public interface SchedulingPolicy {
+
+  /*************
+   * Chooses the program to run for the next time slice
+   * @param mReady the programs that haven't finished, in the order they were added; never empty
+   * @return one of mReady
+   */
+  public ScheduledProgram choose(List<ScheduledProgram> mReady);
+}
@@ -0,0 +1,27 @@
+import java.util.List;
+
+/*****************
+ * ShortestRemainingPolicy - runs the program with the fewest steps left
+ * (see ProgramImage.getStepEstimate). Programs that never finish go last,
+ * and ties take turns, round-robin.
+ * @author Andy
+ *
+ */
+public class ShortestRemainingPolicy implements SchedulingPolicy {
+
+  public ScheduledProgram choose(List<ScheduledProgram> mReady) {
+    ScheduledProgram tBest = null;
+    long tBestLeft = 0;
+    for(ScheduledProgram tProg: mReady) {
+      long tLeft = tProg.getRemainingSteps();
+      if(tBest == null || tLeft < tBestLeft
+          || (tLeft == tBestLeft && tProg.getLastRun() < tBest.getLastRun())) {
+        tBest = tProg;
+        tBestLeft = tLeft;
+      }
+    }
+    return tBest;
+  }
+
+  public String toString() { return "shortest-remaining-steps"; }
+}
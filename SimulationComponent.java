@@ -1,15 +1,17 @@
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
 
 import javax.swing.JComponent;
 import javax.swing.JLabel;
 import javax.swing.JList;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
 import javax.swing.ScrollPaneConstants;
 import javax.swing.SwingConstants;
 
@@ -22,14 +24,31 @@ import javax.swing.SwingConstants;
 public class SimulationComponent extends JComponent {
 
   private static final long serialVersionUID = 1L;
+  public static final long DEFAULT_MEMORY_LIMIT = 340;   // the VM memory shown when the simulator started
+  private static final long RATE_PERIOD = 500000000L;   // nanoseconds between steps/sec readings
   private Vector<String> gProgNames;
   private Program gCurrentProgram;
   private File gCurrentProgramFile;
-  private boolean gProgramRunning;
+  private volatile boolean gProgramRunning;
   private GraphicsComponent gGraphicsComp;
   private JList<String> gProgMethodList;
   private JLabel gPrognameLabel;
-  private JTextArea gStatusArea;
+  private JList<String> gStatusList;
+  private StatusLogModel gStatusModel;
+  private SimulationWorker gWorker;     // runs the current program off the EDT
+  private long gMemoryLimit = DEFAULT_MEMORY_LIMIT;
+  private boolean bStats;               // count what programs do and publish it over JMX
+  private SimulationStats gStats;       // counters for the current program, if bStats
+  private boolean bHistory = true;      // keep checkpoints so programs can be stepped back
+  private long gRateSteps;              // steps shown when the rate was last measured
+  private long gRateTime;               // System.nanoTime() of that measurement
+  private long gStepsPerSecond;
+  private TraceReplayer gReplay;        // the trace being played back in place of a program, if any
+  private long gInterval = SimulationWorker.DEFAULT_INTERVAL;   // pacing, for playing traces back
+  private int gBurst = SimulationWorker.DEFAULT_BURST;
+  private boolean bTurbo;
+  private long gClockTime;              // System.nanoTime() when playback started at this pace
+  private long gClockSteps;             // the step it started from
 
   /***********
    * Constructor - initializes private attributes and sets up all graphics stuff
@@ -107,10 +126,14 @@ public class SimulationComponent extends JComponent {
     tStatusLabel.setPreferredSize(new Dimension(450, 20));
     tStatusPanel.add(tStatusLabel, BorderLayout.NORTH);
   
-    gStatusArea = new JTextArea(7, 40);
-    gStatusArea.setEditable(false);
+    // only the visible rows of the status log are ever rendered
+    gStatusModel = new StatusLogModel(new StatusLog(StatusLog.DEFAULT_CAPACITY));
+    gStatusList = new JList<String>(gStatusModel);
+    gStatusList.setPrototypeCellValue("Status");
+    gStatusList.setFixedCellWidth(430);
+    gStatusList.setVisibleRowCount(7);
 
-    JScrollPane tTextPane = new JScrollPane(gStatusArea);
+    JScrollPane tTextPane = new JScrollPane(gStatusList);
     tTextPane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
     tTextPane.setMinimumSize(new Dimension(450, 180));
     tTextPane.setPreferredSize(new Dimension(450, 180));
@@ -122,30 +145,187 @@ public class SimulationComponent extends JComponent {
     this.add(tOtherPanel, BorderLayout.EAST);
     
     gProgNames = new Vector<String>();
-    
+
+    gWorker = new SimulationWorker(StatusLog.DEFAULT_CAPACITY);
+    gWorker.startThread();
   }
   
   /*******************
-   * step method - called every time MainWindow's timer ticks
+   * step method - executes one step of the current program right away
    */
   public void step() {
+    if(gReplay != null) {
+      play(1);
+      return;
+    }
+    gWorker.stepOnce();
+    refresh();
+  }
+
+  /*******************
+   * Takes the current program back one step: it is restored from its last
+   * checkpoint and re-run up to the step before. A trace being played
+   * back moves back one step.
+   */
+  public void stepBack() {
+    if(gReplay != null) {
+      seek(gReplay.getSteps() - 1);
+      return;
+    }
+    if(gCurrentProgram == null) { return; }
+    gWorker.pause();
+    refresh();      // show everything up to now first, so the right messages come off
+    gStatusModel.removeLast(gWorker.stepBack(1));
+    refresh();
+    gProgramRunning = false;
+  }
+
+  /*******************
+   * Starts running the current program on the worker thread. Call
+   * refresh() every frame to show its progress.
+   */
+  public void start() {
+    if(gCurrentProgram == null && gReplay == null) { return; }
     gProgramRunning = true;
-    if(gCurrentProgram == null) {
+    gStepsPerSecond = 0;
+    gRateSteps = -1;
+    if(gReplay != null) {
+      startClock();
       return;
-    } else if(gCurrentProgram.isFinished()) {
+    }
+    gWorker.start();
+  }
+
+  /*******************
+   * Shows what the program has done since the last refresh: its call
+   * stack, and the status messages in one batch. Called every time
+   * MainWindow's frame timer ticks.
+   */
+  public void refresh() {
+    if(gReplay != null) {
+      if(gProgramRunning) { play(stepsDue()); }
+      return;
+    }
+    boolean bIdle = !gWorker.isRunning();
+    SimulationSnapshot tSnapshot = gWorker.takeSnapshot();
+    if(tSnapshot != null) { show(tSnapshot); }
+    // an idle worker's snapshot holds everything up to its last step
+    if(bIdle) { gProgramRunning = false; }
+  }
+
+  private void show(SimulationSnapshot mSnapshot) {
+    measureRate(mSnapshot.getSteps());
+    gGraphicsComp.setStack(mSnapshot.getStack());
+    if(mSnapshot.getSkipped() > 0) {
+      gStatusModel.append("... " + mSnapshot.getSkipped() + " status messages skipped ...");
+    }
+    gStatusModel.appendAll(mSnapshot.getMessages());
+    gStatusList.ensureIndexIsVisible(gStatusModel.getSize() - 1);
+  }
+
+  /*******************
+   * Plays the next mSteps steps of the trace and shows where they end up
+   */
+  private void play(long mSteps) {
+    try {
+      show(gReplay.advance(mSteps, gStatusModel.getLog().getCapacity()));
+    } catch (IOException e) {
+      addStatusMessage("Could not read the trace: " + e.getMessage());
       gProgramRunning = false;
-    } else {
-      gProgramRunning = true;
-      gCurrentProgram.step(this);
     }
-    gGraphicsComp.repaint();
+    if(gReplay.isFinished()) { gProgramRunning = false; }
   }
-  
+
+  /*******************
+   * Gets how many steps of the trace are due, at the current speed, for
+   * playback to keep the pace the worker would run a program at
+   */
+  private long stepsDue() {
+    if(bTurbo || gInterval == 0) { return SimulationWorker.TURBO_BURST; }
+    long tTicks = (System.nanoTime() - gClockTime) / TimeUnit.MILLISECONDS.toNanos(gInterval) + 1;
+    return Math.max(0, gClockSteps + tTicks * gBurst - gReplay.getSteps());
+  }
+
+  private void startClock() {
+    gClockTime = System.nanoTime();
+    gClockSteps = gReplay.getSteps();
+  }
+
+  private void measureRate(long mSteps) {
+    long tNow = System.nanoTime();
+    if(gRateSteps < 0 || mSteps < gRateSteps) {
+      // first reading since start(), or the program was rewound
+      gRateSteps = mSteps;
+      gRateTime = tNow;
+      return;
+    }
+    long tElapsed = tNow - gRateTime;
+    if(tElapsed >= RATE_PERIOD) {
+      gStepsPerSecond = (long) ((mSteps - gRateSteps) * 1e9 / tElapsed);
+      gRateSteps = mSteps;
+      gRateTime = tNow;
+    }
+  }
+
+  /*******************
+   * Gets how fast the current program has been running, as of the last
+   * refresh; 0 when it isn't running
+   * @return steps per second
+   */
+  public long getStepsPerSecond() { return gProgramRunning ? gStepsPerSecond : 0; }
+
+  /*******************
+   * Sets how fast the program runs
+   * @param mInterval milliseconds between ticks
+   * @param mSteps steps executed every tick
+   */
+  public void setSpeed(long mInterval, int mSteps) {
+    gInterval = Math.max(0, mInterval);
+    gBurst = Math.max(1, mSteps);
+    gWorker.setPacing(mInterval, mSteps);
+    if(gReplay != null) { startClock(); }
+  }
+
+  /*******************
+   * Turns turbo mode on or off: the program runs to completion as fast as
+   * it can and the display only catches up between large bursts of steps
+   * @param mTurbo true for turbo mode
+   */
+  public void setTurbo(boolean mTurbo) {
+    bTurbo = mTurbo;
+    gWorker.setTurbo(mTurbo);
+    if(gReplay != null) { startClock(); }
+  }
+
   /***************
-   * reset method: clears the status of the current program
+   * reset method: clears the status of the current program. If its file
+   * hasn't changed, the loaded program is just rewound rather than reloaded.
+   * A trace is played back from its first step.
    */
   public void reset() {
-      addProgram(gCurrentProgramFile);
+    if(gReplay != null) {
+      seek(0);
+      return;
+    }
+    if(gCurrentProgramFile == null) { return; }
+    if(gCurrentProgram != null) {
+      try {
+        ProgramImage tImage = ProgramCache.shared().load(gCurrentProgramFile);
+        if(tImage == gCurrentProgram.getImage()) {
+          gWorker.rewind();
+          if(gStats != null) { gStats.reset(); }
+          gProgramRunning = false;
+          gGraphicsComp.clearMethods();
+          gGraphicsComp.repaint();
+          return;
+        }
+      } catch (SyntaxErrorException e) {
+        // fall through: addProgram reports it
+      } catch (IOException e) {
+        // fall through: addProgram reports it
+      }
+    }
+    addProgram(gCurrentProgramFile);
   }
 
   
@@ -158,7 +338,20 @@ public class SimulationComponent extends JComponent {
     Program tProg = null;
     try {
       // attempt to instantiate the program from the file
-      tProg = new Program(tFile, this);
+      SimulationListener tListener = gWorker;
+      SimulationStats tStats = bStats ? new SimulationStats(gWorker, tFile.getName()) : null;
+      if(tStats != null) { tListener = tStats; }
+      ProgramHistory tHistory = bHistory ? new ProgramHistory(tListener) : null;
+      tProg = new Program(tFile, tHistory == null ? tListener : tHistory);
+      tProg.setMemoryLimit(gMemoryLimit);
+      closeTrace();
+      if(tHistory != null) {
+        gWorker.setProgram(tProg, tHistory);
+      } else {
+        gWorker.setProgram(tProg, tListener);
+      }
+      watch(tStats);
+      gProgramRunning = false;
       gCurrentProgram = tProg;
       gPrognameLabel.setText(tProg.getName());
       gGraphicsComp.clearMethods();
@@ -170,37 +363,156 @@ public class SimulationComponent extends JComponent {
       gProgMethodList.setListData(arr);
       gCurrentProgramFile = tFile;
     } catch (SyntaxErrorException e) {
-      gStatusArea.append("Syntax error in " + tFile.getName() + ":\n");
-      gStatusArea.append(e.getMessage() + "\n");
-      gStatusArea.append("Program not loaded.\n");
+      addStatusMessage("Syntax error in " + tFile.getName() + ":");
+      addStatusMessage(e.getMessage());
+      addStatusMessage("Program not loaded.");
     }
     
     gGraphicsComp.repaint();
   }
   
-  /*************
-   * Adds the given method to the graphical stack representation
-   * @param mMethod the method to add
+  /***************
+   * Loads a trace written by a TraceRecorder in place of the current
+   * program. Running, stepping and resetting then play the trace back:
+   * its call stack and status messages are shown just as the program's
+   * would have been, without running it.
+   * @param mFile the trace file
    */
-  public void addMethodToGraphicalStack(Method mMethod) {
-    gGraphicsComp.addMethod(mMethod);
+  public void loadTrace(File mFile) {
+    TraceReplayer tReplay;
+    try {
+      tReplay = new TraceReplayer(mFile);
+    } catch (IOException e) {
+      addStatusMessage("Could not load trace " + mFile.getName() + ":");
+      addStatusMessage(e.getMessage());
+      addStatusMessage("Trace not loaded.");
+      return;
+    }
+    gWorker.setProgram(null);
+    watch(null);
+    closeTrace();
+    gReplay = tReplay;
+    gCurrentProgram = null;
+    gCurrentProgramFile = null;
+    gProgramRunning = false;
+    gPrognameLabel.setText(tReplay.getName() + " (trace of " + tReplay.getTotalSteps() + " steps)");
+    List<Method> methods = tReplay.getMethodList();
+    String[] arr = new String[methods.size()];
+    for(int i = 0; i < arr.length; i++) {
+      arr[i] = methods.get(i).getName();
+    }
+    gProgMethodList.setListData(arr);
+    gGraphicsComp.clearMethods();
+    gGraphicsComp.repaint();
   }
-  
-  /**************
-   * Attempts to remove the given method from the graphical stack representation
-   * @param mMethod the method to remove
+
+  /***************
+   * Moves playback of the loaded trace to just after the given step,
+   * showing the stack there and the status messages leading up to it.
+   * Does nothing when a program is loaded rather than a trace.
+   * @param mStep the step, from 0 (before the first step)
+   */
+  public void seek(long mStep) {
+    if(gReplay == null) { return; }
+    gProgramRunning = false;
+    gStatusModel.clear();
+    try {
+      show(gReplay.seek(mStep, gStatusModel.getLog().getCapacity()));
+    } catch (IOException e) {
+      addStatusMessage("Could not read the trace: " + e.getMessage());
+    }
+  }
+
+  /***************
+   * Gets the number of steps in the loaded trace
+   * @return the number of steps, or -1 when a program is loaded rather than a trace
    */
-  public void removeMethodFromGraphicalStack(Method mMethod) {
-    gGraphicsComp.removeMethod(mMethod);
+  public long getTraceSteps() { return gReplay == null ? -1 : gReplay.getTotalSteps(); }
+
+  private void closeTrace() {
+    if(gReplay == null) { return; }
+    try {
+      gReplay.close();
+    } catch (IOException e) {
+      // nothing more to read from it anyway
+    }
+    gReplay = null;
   }
-  
+
   /****************
-   * Appends the given string to the status text area. This method also adds a 
-   * newline ('\n') to the String given
+   * Appends the given string to the status log as a new line, and scrolls
+   * the log to show it
    * @param str the string to append
    */
   public void addStatusMessage(String str) {
-    gStatusArea.append(str + "\n");
+    gStatusModel.append(str);
+    gStatusList.ensureIndexIsVisible(gStatusModel.getSize() - 1);
+  }
+
+  /****************
+   * Sets the VM memory limit for programs loaded from now on
+   * @param mLimit the limit, or CallStack.UNLIMITED
+   */
+  public void setMemoryLimit(long mLimit) { gMemoryLimit = mLimit; }
+
+  /****************
+   * Turns statistics on or off for programs loaded from now on. With them
+   * on, each program's SimulationStats are registered over JMX while it is
+   * the current program.
+   * @param mOn true to collect statistics
+   */
+  public void setStatsEnabled(boolean mOn) { bStats = mOn; }
+
+  /****************
+   * Turns stepping back on or off for programs loaded from now on. With
+   * it on, each program keeps a ProgramHistory of checkpoints.
+   * @param mOn true to keep checkpoints
+   */
+  public void setHistoryEnabled(boolean mOn) { bHistory = mOn; }
+
+  /****************
+   * Registers the given program statistics over JMX in place of the ones
+   * registered before
+   */
+  private void watch(SimulationStats mStats) {
+    if(gStats != null) { gStats.unregister(); }
+    gStats = mStats;
+    if(gStats == null) { return; }
+    try {
+      gStats.register();
+    } catch (JMException e) {
+      addStatusMessage("Could not register program statistics: " + e.getMessage());
+    }
+  }
+
+  /****************
+   * Sets how many status messages are kept on screen. Messages already
+   * logged are discarded; the spill file, if any, is kept.
+   * @param mCapacity the number of messages
+   */
+  public void setStatusLogCapacity(int mCapacity) {
+    StatusLog tLog = new StatusLog(mCapacity);
+    gStatusModel.getLog().moveSpillTo(tLog);
+    gStatusModel = new StatusLogModel(tLog);
+    gStatusList.setModel(gStatusModel);
+  }
+
+  /****************
+   * Sets a file that status messages are appended to once they drop out
+   * of the on-screen log
+   * @param mFile the file, or null to stop spilling
+   * @throws IOException if the file can't be opened
+   */
+  public void setStatusSpillFile(File mFile) throws IOException {
+    gStatusModel.getLog().setSpillFile(mFile);
+  }
+
+  /****************
+   * Flushes and closes the status spill file, if any, so messages spilled
+   * so far aren't lost when the application exits
+   */
+  public void closeStatusSpill() {
+    gStatusModel.getLog().closeSpill();
   }
   
   /****************
@@ -210,7 +522,13 @@ public class SimulationComponent extends JComponent {
   public boolean isProgramRunning() { return gProgramRunning; }
 
   /****************
-   * Orders the simulation to halt
+   * Orders the simulation to halt. The next refresh() shows where it stopped.
    */
-  public void halt() { gProgramRunning = false; }
+  public void halt() {
+    if(gReplay != null) {
+      gProgramRunning = false;
+      return;
+    }
+    gWorker.pause();
+  }
 }
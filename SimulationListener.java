@@ -0,0 +1,43 @@
+/*****************
+ * SimulationListener - receives the events produced while a Program runs.
+ * SimulationWorker implements this to keep the stack and status messages
+ * the GUI draws, and the headless simulator implements it to run without
+ * a display.
+ * @author Andy
+ *
+ */
+public interface SimulationListener {
+
+  /*************
+   * Called after a method has been pushed onto the call stack
+   * @param mFrame the frame that was pushed
+   */
+  public void methodPushed(Frame mFrame);
+
+  /*************
+   * Called after a method has been popped off the call stack
+   * @param mFrame the frame that was popped
+   */
+  public void methodPopped(Frame mFrame);
+
+  /*************
+   * Called for every instruction executed, with the status line it produces.
+   * Print statements arrive as Instruction.PRINT.
+   * @param mInstruction the instruction that was executed
+   */
+  public void outputEmitted(Instruction mInstruction);
+
+  /*************
+   * Called when a call didn't fit in the VM's memory limit. The program
+   * stops there, and programFinished follows.
+   * @param mProgram the program that overflowed
+   * @param mError the overflow, saying which method didn't fit
+   */
+  public void stackOverflowed(Program mProgram, StackOverflowException mError);
+
+  /*************
+   * Called once, when the program has finished executing
+   * @param mProgram the program that finished
+   */
+  public void programFinished(Program mProgram);
+}
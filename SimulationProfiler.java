@@ -0,0 +1,182 @@
+import java.io.PrintStream;
+
+/*****************
+ * SimulationProfiler - finds out where a simulated program spends its
+ * steps and writes the answer in the collapsed-stack format ("main;f2;f4 12"
+ * per line) that flame graph tools read. Like SimulationStats, it sits in
+ * front of a program's real listener and passes every event on.
+ *
+ * The profiler never looks at the call stack itself. It keeps a tree of
+ * every call path seen so far and a cursor at the node for the current
+ * stack: a push moves the cursor to a child, a pop back to the parent, so
+ * knowing the whole stack costs O(1) per call. Every mInterval-th step adds
+ * one sample to the cursor's node; an interval of 1 attributes every step
+ * exactly. Steps are attributed to the frame that takes them: an
+ * instruction's to the frame executing it, a return's to the frame
+ * returning.
+ * @author Andy
+ *
+ */
+public class SimulationProfiler implements SimulationListener {
+
+  public static final int MAX_FOLDED_DEPTH = 512;   // deeper paths are cut short when written
+
+  /*****************
+   * One call path: the method called and how it was reached. Children are
+   * kept in a singly linked list, since most methods call only a few others.
+   */
+  private static final class Node {
+    final Method method;          // null for the root
+    final Node parent;
+    final int depth;              // 0 for main, -1 for the root
+    Node firstChild;
+    Node nextSibling;
+    long samples;                 // samples taken with this path on top
+
+    Node(Method mMethod, Node mParent) {
+      method = mMethod;
+      parent = mParent;
+      depth = mParent == null ? -1 : mParent.depth + 1;
+    }
+
+    Node child(Method mMethod) {
+      for(Node tNode = firstChild; tNode != null; tNode = tNode.nextSibling) {
+        if(tNode.method == mMethod) { return tNode; }
+      }
+      Node tNode = new Node(mMethod, this);
+      tNode.nextSibling = firstChild;
+      firstChild = tNode;
+      return tNode;
+    }
+  }
+
+  private SimulationListener gListener;   // the listener events are passed on to
+  private String gName;                   // the program's name
+  private int gInterval;                  // steps per sample
+  private int gUntilSample;               // steps left until the next sample
+  private Node gRoot = new Node(null, null);
+  private Node gCursor = gRoot;           // the node for the current call stack
+  private final StepTracker gTracker = new StepTracker();
+  private long gSamples;                  // samples taken so far
+
+  /***************
+   * Constructor
+   * @param mListener the listener to pass every event on to
+   * @param mName the name of the program being profiled
+   * @param mInterval take a sample every this many steps; 1 to count every step
+   */
+  public SimulationProfiler(SimulationListener mListener, String mName, int mInterval) {
+    gListener = mListener;
+    gName = mName;
+    gInterval = Math.max(1, mInterval);
+    gUntilSample = gInterval;
+  }
+
+  /*************
+   * Throws away every sample and the call tree, for when the program is rewound
+   */
+  public void reset() {
+    gRoot = new Node(null, null);
+    gCursor = gRoot;
+    gUntilSample = gInterval;
+    gTracker.reset();
+    gSamples = 0;
+  }
+
+  /*************
+   * Gets the name of the program being profiled
+   */
+  public String getName() { return gName; }
+
+  /*************
+   * Gets the number of samples taken so far
+   */
+  public long getSamples() { return gSamples; }
+
+  public void methodPushed(Frame mFrame) {
+    gCursor = gCursor.child(mFrame.getMethod());
+    gTracker.pushed();
+    gListener.methodPushed(mFrame);
+  }
+
+  public void methodPopped(Frame mFrame) {
+    if(gTracker.isOwnStep()) { stepped(); }
+    if(gCursor.parent != null) { gCursor = gCursor.parent; }
+    gListener.methodPopped(mFrame);
+  }
+
+  public void outputEmitted(Instruction mInstruction) {
+    stepped();
+    gTracker.executed(mInstruction);
+    gListener.outputEmitted(mInstruction);
+  }
+
+  public void stackOverflowed(Program mProgram, StackOverflowException mError) {
+    gListener.stackOverflowed(mProgram, mError);
+  }
+
+  public void programFinished(Program mProgram) {
+    gListener.programFinished(mProgram);
+  }
+
+  private void stepped() {
+    if(--gUntilSample == 0) {
+      gUntilSample = gInterval;
+      gCursor.samples++;
+      gSamples++;
+    }
+  }
+
+  /*************
+   * Writes one line per call path that was sampled: the methods from the
+   * bottom of the stack up, separated by semicolons, then the sample count.
+   * Every line repeats its whole path, so deep recursion would make the
+   * output quadratic in size: paths are cut at MAX_FOLDED_DEPTH frames, and
+   * the samples of everything deeper are written once under a "..." frame.
+   * @param mOut where to write
+   * @param mPrefix a frame to put below every path (the program's name,
+   *   when several programs share a file), or null for none
+   */
+  public void writeFolded(PrintStream mOut, String mPrefix) {
+    // depth first with an explicit stack: recursive programs make deep trees
+    CircularArrayDequeImplementation<Node> tPending = new CircularArrayDequeImplementation<Node>();
+    StringBuilder tPath = new StringBuilder(mPrefix == null ? "" : mPrefix);
+    int[] tEnds = new int[16];     // length of the path up to each depth, on the current path
+    int tBase = tPath.length();
+    for(Node tChild = gRoot.firstChild; tChild != null; tChild = tChild.nextSibling) { tPending.addFront(tChild); }
+    while(!tPending.isEmpty()) {
+      Node tNode = tPending.removeFront();
+      tPath.setLength(tNode.depth == 0 ? tBase : tEnds[tNode.depth - 1]);
+      if(tPath.length() > 0) { tPath.append(';'); }
+      tPath.append(tNode.method.getName());
+      if(tNode.depth == tEnds.length) {
+        int[] tBigger = new int[2 * tEnds.length];
+        System.arraycopy(tEnds, 0, tBigger, 0, tEnds.length);
+        tEnds = tBigger;
+      }
+      tEnds[tNode.depth] = tPath.length();
+      if(tNode.samples > 0) { mOut.println(tPath + " " + tNode.samples); }
+      if(tNode.depth == MAX_FOLDED_DEPTH - 1) {
+        long tDeeper = samplesBelow(tNode);
+        if(tDeeper > 0) { mOut.println(tPath + ";... " + tDeeper); }
+        continue;
+      }
+      for(Node tChild = tNode.firstChild; tChild != null; tChild = tChild.nextSibling) { tPending.addFront(tChild); }
+    }
+  }
+
+  /*************
+   * Gets the samples of every node below the given one
+   */
+  private static long samplesBelow(Node mNode) {
+    long tSamples = 0;
+    CircularArrayDequeImplementation<Node> tPending = new CircularArrayDequeImplementation<Node>();
+    for(Node tChild = mNode.firstChild; tChild != null; tChild = tChild.nextSibling) { tPending.addFront(tChild); }
+    while(!tPending.isEmpty()) {
+      Node tNode = tPending.removeFront();
+      tSamples += tNode.samples;
+      for(Node tChild = tNode.firstChild; tChild != null; tChild = tChild.nextSibling) { tPending.addFront(tChild); }
+    }
+    return tSamples;
+  }
+}
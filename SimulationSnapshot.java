@@ -0,0 +1,54 @@
+/*****************
+ * SimulationSnapshot - what a SimulationWorker hands to the GUI: the call
+ * stack at one moment and the status messages produced since the previous
+ * snapshot. Immutable.
+ * @author Andy
+ *
+ */
+public final class SimulationSnapshot {
+
+  private final StackSnapshot gStack;
+  private final String[] gMessages;
+  private final long gSkipped;
+  private final long gSteps;
+  private final boolean bFinished;
+
+  /***************
+   * Constructor
+   * @param mStack the call stack
+   * @param mMessages new status messages, oldest first
+   * @param mSkipped messages produced before mMessages that were dropped
+   * @param mSteps steps the program has executed
+   * @param mFinished whether the program has finished
+   */
+  public SimulationSnapshot(StackSnapshot mStack, String[] mMessages, long mSkipped, long mSteps, boolean mFinished) {
+    gStack = mStack;
+    gMessages = mMessages;
+    gSkipped = mSkipped;
+    gSteps = mSteps;
+    bFinished = mFinished;
+  }
+
+  /*************
+   * Appends a later snapshot to this one: the result has the later stack,
+   * and the messages of both
+   * @param mLater the later snapshot
+   * @return the combined snapshot
+   */
+  public SimulationSnapshot followedBy(SimulationSnapshot mLater) {
+    String[] tMessages = new String[gMessages.length + mLater.gMessages.length];
+    System.arraycopy(gMessages, 0, tMessages, 0, gMessages.length);
+    System.arraycopy(mLater.gMessages, 0, tMessages, gMessages.length, mLater.gMessages.length);
+    return new SimulationSnapshot(mLater.gStack, tMessages, gSkipped + mLater.gSkipped, mLater.gSteps, mLater.bFinished);
+  }
+
+  public StackSnapshot getStack() { return gStack; }
+
+  public String[] getMessages() { return gMessages; }
+
+  public long getSkipped() { return gSkipped; }
+
+  public long getSteps() { return gSteps; }
+
+  public boolean isFinished() { return bFinished; }
+}
@@ -0,0 +1,63 @@
+import java.util.Map;
+
+/*****************
+ * SimulationStatsMXBean - the counters a SimulationStats publishes over JMX,
+ * so a long run can be watched in JConsole or VisualVM. Every attribute may
+ * lag the running program by a few steps.
+ * @author Andy
+ *
+ */
+public interface SimulationStatsMXBean {
+
+  /*************
+   * Gets the name of the program being watched
+   */
+  public String getProgramName();
+
+  /*************
+   * Gets the number of steps the program has executed
+   */
+  public long getSteps();
+
+  /*************
+   * Gets the steps executed per second, averaged over about the last second
+   */
+  public long getStepsPerSecond();
+
+  /*************
+   * Gets the number of frames on the call stack
+   */
+  public int getStackDepth();
+
+  /*************
+   * Gets the most frames there have been on the call stack
+   */
+  public int getMaxStackDepth();
+
+  /*************
+   * Gets the simulated memory used by the frames on the call stack: the
+   * sum of their methods' sizes
+   */
+  public long getMemoryUsed();
+
+  /*************
+   * Gets the most simulated memory the frames have used at once
+   */
+  public long getMaxMemoryUsed();
+
+  /*************
+   * Gets how many times each method has been called, by name. Methods
+   * that haven't been called yet are left out.
+   */
+  public Map<String, Long> getCalls();
+
+  /*************
+   * Gets how many times each method has returned, by name
+   */
+  public Map<String, Long> getReturns();
+
+  /*************
+   * Returns true once the program has finished
+   */
+  public boolean isFinished();
+}
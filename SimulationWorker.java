@@ -0,0 +1,365 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*****************
+ * SimulationWorker - runs a Program on its own thread, so the simulation
+ * speed is not tied to the GUI. The worker is the program's listener: it
+ * keeps the call stack as a StackSnapshot and buffers status messages.
+ *
+ * The GUI never sees the program itself. Each frame it calls takeSnapshot(),
+ * which returns the stack and the messages produced since the last call as
+ * one immutable SimulationSnapshot. If the worker is in the middle of a
+ * burst of steps, it publishes a snapshot at its next step instead and the
+ * GUI picks it up on the following frame.
+ *
+ * In turbo mode the worker runs flat out in large bursts and only hands
+ * over snapshots between bursts, so the GUI costs it almost nothing.
+ *
+ * Every method except run() may be called from any thread.
+ * @author Andy
+ *
+ */
+public class SimulationWorker implements Runnable, SimulationListener {
+
+  public static final long DEFAULT_INTERVAL = 250;    // milliseconds between bursts
+  public static final int DEFAULT_BURST = 1;          // steps per burst
+  public static final int TURBO_BURST = 1 << 18;      // steps per burst in turbo mode
+
+  // fair, so the GUI gets the lock between bursts even at full speed
+  private final ReentrantLock gLock = new ReentrantLock(true);
+  private final Condition gWake = gLock.newCondition();
+
+  // guarded by gLock
+  private Program gProgram;
+  private SimulationListener gListener;  // what the program is stepped with: this, or a listener in front of it
+  private ProgramHistory gHistory;      // steps the program and keeps checkpoints of it, or null
+  private StackSnapshot gTop;           // the program's call stack
+  private StatusLog gOutput;            // messages not yet handed to the GUI
+  private long gNextBurst;              // System.nanoTime() of the next burst
+  private long gCollected;              // program steps when the last snapshot was taken
+
+  private volatile boolean bRunning;    // checked at every step, so pausing is immediate
+
+  private volatile long gInterval = DEFAULT_INTERVAL;
+  private volatile int gBurst = DEFAULT_BURST;
+  private volatile boolean bTurbo;
+  private volatile boolean bSnapshotWanted;
+  private final AtomicReference<SimulationSnapshot> gPublished = new AtomicReference<SimulationSnapshot>();
+
+  /***************
+   * Constructor
+   * @param mBufferSize the most status messages to hold between snapshots;
+   *   older ones are counted but dropped
+   */
+  public SimulationWorker(int mBufferSize) {
+    gOutput = new StatusLog(mBufferSize);
+  }
+
+  /*************
+   * Starts a daemon thread running this worker
+   * @return the thread
+   */
+  public Thread startThread() {
+    Thread tThread = new Thread(this, "Simulation worker");
+    tThread.setDaemon(true);
+    tThread.start();
+    return tThread;
+  }
+
+  /*************
+   * Sets the program to run, stopping the one running before. The program
+   * must have been created with this worker as its listener.
+   * @param mProgram the program, or null for none
+   */
+  public void setProgram(Program mProgram) {
+    setProgram(mProgram, this);
+  }
+
+  /*************
+   * Sets the program to run, stopping the one running before. The program
+   * must have been created with mListener, which passes every event on to
+   * this worker (a SimulationStats, say).
+   * @param mProgram the program, or null for none
+   * @param mListener the listener to step the program with
+   */
+  public void setProgram(Program mProgram, SimulationListener mListener) {
+    bRunning = false;
+    gLock.lock();
+    try {
+      gProgram = mProgram;
+      gListener = mListener;
+      gHistory = null;
+      forget();
+    } finally {
+      gLock.unlock();
+    }
+  }
+
+  /*************
+   * Sets the program to run, stopping the one running before, and keeps
+   * its history so it can be stepped back. The program must have been
+   * created with mHistory as its listener, and mHistory must pass every
+   * event on to this worker (through a SimulationStats, say).
+   * @param mProgram the program
+   * @param mHistory the history to step the program with
+   */
+  public void setProgram(Program mProgram, ProgramHistory mHistory) {
+    bRunning = false;
+    gLock.lock();
+    try {
+      mHistory.setProgram(mProgram);
+      gProgram = mProgram;
+      gListener = mHistory;
+      gHistory = mHistory;
+      forget();
+    } finally {
+      gLock.unlock();
+    }
+  }
+
+  /*************
+   * Stops the program and takes it back some steps, if its history is
+   * kept. The next snapshot shows the stack it is back to; messages not
+   * yet handed over are dropped.
+   * @param mSteps the number of steps to undo
+   * @return the number of status messages the undone steps had produced
+   */
+  public long stepBack(long mSteps) {
+    bRunning = false;
+    gLock.lock();
+    try {
+      if(gProgram == null || gHistory == null) { return 0; }
+      long tOutputs = gProgram.getOutputs();
+      gHistory.stepBack(mSteps);
+      forget();
+      gTop = gProgram.checkpoint().getStack();
+      gCollected = -1;    // so the next snapshot is taken, even back at step 0
+      return tOutputs - gProgram.getOutputs();
+    } finally {
+      gLock.unlock();
+    }
+  }
+
+  /*************
+   * Stops the program and rewinds it to its first step
+   */
+  public void rewind() {
+    bRunning = false;
+    gLock.lock();
+    try {
+      if(gHistory != null) {
+        gHistory.reset();
+      } else if(gProgram != null) {
+        gProgram.reset();
+      }
+      forget();
+    } finally {
+      gLock.unlock();
+    }
+  }
+
+  /*************
+   * Starts (or resumes) running the program
+   */
+  public void start() {
+    gLock.lock();
+    try {
+      bRunning = gProgram != null;
+      gNextBurst = System.nanoTime();
+      gWake.signal();
+    } finally {
+      gLock.unlock();
+    }
+  }
+
+  /*************
+   * Stops running the program after the current step
+   */
+  public void pause() { bRunning = false; }
+
+  /*************
+   * Executes one step now, on the calling thread. Waits for the current
+   * burst, if any, to end.
+   */
+  public void stepOnce() {
+    gLock.lock();
+    try {
+      if(gProgram != null && !gProgram.isFinished()) { advance(); }
+    } finally {
+      gLock.unlock();
+    }
+  }
+
+  /*************
+   * Sets how the program is paced
+   * @param mInterval milliseconds between bursts, 0 for none
+   * @param mBurst steps per burst
+   */
+  public void setPacing(long mInterval, int mBurst) {
+    gInterval = Math.max(0, mInterval);
+    gBurst = Math.max(1, mBurst);
+    gLock.lock();
+    try {
+      gNextBurst = System.nanoTime();
+      gWake.signal();
+    } finally {
+      gLock.unlock();
+    }
+  }
+
+  /*************
+   * Turns turbo mode on or off. While it is on, the pacing is ignored.
+   * @param mTurbo true to run the program to completion as fast as possible
+   */
+  public void setTurbo(boolean mTurbo) {
+    bTurbo = mTurbo;
+    gLock.lock();
+    try {
+      gNextBurst = System.nanoTime();
+      gWake.signal();
+    } finally {
+      gLock.unlock();
+    }
+  }
+
+  /*************
+   * Returns true if turbo mode is on
+   */
+  public boolean isTurbo() { return bTurbo; }
+
+  /*************
+   * Returns true while the program is running
+   */
+  public boolean isRunning() { return bRunning; }
+
+  /*************
+   * Gets what has happened since the last call. Meant to be called once
+   * per frame by the GUI. Once isRunning() has returned false, the next
+   * call returns everything up to the last step.
+   * @return a snapshot, or null if there is nothing new yet
+   */
+  public SimulationSnapshot takeSnapshot() {
+    if(!bRunning) {
+      // at most the end of a burst to wait for
+      gLock.lock();
+      try {
+        return collect();
+      } finally {
+        gLock.unlock();
+      }
+    }
+    if(gLock.tryLock()) {
+      try {
+        return collect();
+      } finally {
+        gLock.unlock();
+      }
+    }
+    // the worker is mid-burst: it publishes at its next step, or at the
+    // end of the burst in turbo mode
+    bSnapshotWanted = true;
+    return gPublished.getAndSet(null);
+  }
+
+  /*************
+   * Runs the worker loop; never returns
+   */
+  public void run() {
+    gLock.lock();
+    try {
+      while(true) {
+        if(!bRunning) {
+          gWake.awaitUninterruptibly();
+          continue;
+        }
+        long tWait = gNextBurst - System.nanoTime();
+        if(tWait > 0) {
+          gWake.awaitNanos(tWait);
+          continue;
+        }
+        boolean tTurbo = bTurbo;
+        long tInterval = tTurbo ? 0 : gInterval;
+        gNextBurst = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(tInterval);
+        burst(tTurbo ? TURBO_BURST : gBurst, !tTurbo);
+        if(tInterval == 0) {
+          // let anyone waiting for the lock in
+          gLock.unlock();
+          gLock.lock();
+        }
+      }
+    } catch(InterruptedException e) {
+      // the thread is being shut down
+    } finally {
+      gLock.unlock();
+    }
+  }
+
+  /*************
+   * Runs up to mSteps steps, then publishes a snapshot if one was asked for
+   * @param mSteps the most steps to run
+   * @param mEachStep true to also publish between steps
+   */
+  private void burst(int mSteps, boolean mEachStep) {
+    for(int i = 0; i < mSteps && bRunning; i++) {
+      if(gProgram.isFinished()) {
+        bRunning = false;
+        break;
+      }
+      advance();
+      if(mEachStep && bSnapshotWanted) { publish(); }
+    }
+    if(bSnapshotWanted) { publish(); }
+  }
+
+  /*************
+   * Executes one step of the program. Must hold gLock.
+   */
+  private void advance() {
+    if(gHistory != null) {
+      gHistory.step();
+    } else {
+      gProgram.step(gListener);
+    }
+  }
+
+  private void publish() {
+    bSnapshotWanted = false;
+    gPublished.set(collect());
+  }
+
+  /*************
+   * Builds a snapshot of everything not yet handed to the GUI, including a
+   * published snapshot the GUI hasn't picked up. Must hold gLock.
+   */
+  private SimulationSnapshot collect() {
+    SimulationSnapshot tPending = gPublished.getAndSet(null);
+    if(gProgram == null || gProgram.getSteps() == gCollected) { return tPending; }
+    gCollected = gProgram.getSteps();
+    long tSkipped = gOutput.getTotal() - gOutput.size();
+    SimulationSnapshot tNow = new SimulationSnapshot(gTop, gOutput.drain(), tSkipped,
+        gCollected, gProgram.isFinished());
+    return tPending == null ? tNow : tPending.followedBy(tNow);
+  }
+
+  /*************
+   * Drops the stack and any messages not yet handed over. Must hold gLock.
+   */
+  private void forget() {
+    gTop = null;
+    gOutput.drain();
+    gPublished.set(null);
+    gCollected = 0;
+  }
+
+  public void methodPushed(Frame mFrame) { gTop = StackSnapshot.push(gTop, mFrame.getMethod()); }
+
+  public void methodPopped(Frame mFrame) { if(gTop != null) { gTop = gTop.getBelow(); } }
+
+  public void outputEmitted(Instruction mInstruction) { gOutput.add(mInstruction.getMessage()); }
+
+  public void stackOverflowed(Program mProgram, StackOverflowException mError) { gOutput.add(mError.getMessage()); }
+
+  public void programFinished(Program mProgram) { bRunning = false; }
+}
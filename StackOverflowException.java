@@ -0,0 +1,37 @@
+/*****************
+ * Exception raised by CallStack when a call would take the simulated VM
+ * past its memory limit. Program catches it and ends the run.
+ * @author Andy
+ *
+ */
+public class StackOverflowException extends RuntimeException {
+
+  private Method gMethod;
+  private long gLimit;
+
+  /***************
+   * Constructor
+   * @param mMethod the method whose frame didn't fit
+   * @param mUsed memory in use by the frames already on the stack
+   * @param mLimit the memory limit
+   */
+  public StackOverflowException(Method mMethod, long mUsed, long mLimit) {
+    super("Error: stack overflow calling " + mMethod.getName() + ": " + mUsed + " + " + mMethod.getSize()
+        + " bytes exceeds the memory limit of " + mLimit);
+    gMethod = mMethod;
+    gLimit = mLimit;
+  }
+
+  /*************
+   * Gets the method whose frame didn't fit
+   */
+  public Method getMethod() { return gMethod; }
+
+  /*************
+   * Gets the memory limit that was exceeded
+   */
+  public long getLimit() { return gLimit; }
+
+  private static final long serialVersionUID = 1L;
+
+}
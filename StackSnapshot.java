@@ -0,0 +1,53 @@
+/*****************
+ * StackSnapshot - an immutable picture of a call stack, as a linked list
+ * from the top frame down. Pushing or popping makes a new snapshot that
+ * shares everything below it with the old one, so taking a snapshot costs
+ * nothing and snapshots can be handed to another thread as they are.
+ * The empty stack is null.
+ * @author Andy
+ *
+ */
+public final class StackSnapshot {
+
+  private final Method gMethod;           // the method on top of the stack
+  private final StackSnapshot gBelow;     // the rest of the stack, or null
+  private final int gDepth;               // number of frames, including this one
+
+  private StackSnapshot(Method mMethod, StackSnapshot mBelow) {
+    gMethod = mMethod;
+    gBelow = mBelow;
+    gDepth = mBelow == null ? 1 : mBelow.gDepth + 1;
+  }
+
+  /*************
+   * Gets the snapshot with the given method pushed on top
+   * @param mTop the stack to push onto, or null for the empty stack
+   * @param mMethod the method pushed
+   * @return the new snapshot
+   */
+  public static StackSnapshot push(StackSnapshot mTop, Method mMethod) {
+    return new StackSnapshot(mMethod, mTop);
+  }
+
+  /*************
+   * Gets the number of frames in a stack
+   * @param mTop the stack, or null for the empty stack
+   */
+  public static int depth(StackSnapshot mTop) { return mTop == null ? 0 : mTop.gDepth; }
+
+  /*************
+   * Gets the method on top of this stack
+   */
+  public Method getMethod() { return gMethod; }
+
+  /*************
+   * Gets the stack without its top frame; this is how a pop is done
+   * @return the rest of the stack, or null if this was its only frame
+   */
+  public StackSnapshot getBelow() { return gBelow; }
+
+  /*************
+   * Gets the number of frames in this stack
+   */
+  public int getDepth() { return gDepth; }
+}
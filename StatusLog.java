@@ -0,0 +1,166 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/*****************
+ * StatusLog - a bounded log of status messages, kept in a preallocated
+ * ring buffer. Once the log is full, each new message replaces the oldest
+ * one; if a spill file is set, the replaced messages are appended to it so
+ * nothing is lost.
+ * @author Andy
+ *
+ */
+public class StatusLog {
+
+  public static final int DEFAULT_CAPACITY = 10000;
+
+  private String[] gLines;        // ring buffer of messages
+  private int gFirst;             // index in gLines of the oldest message
+  private int gSize;              // number of messages held
+  private long gTotal;            // messages ever added
+  private Writer gSpill;          // where evicted messages go, or null
+
+  /***************
+   * Constructor
+   * @param mCapacity the most messages to keep in memory
+   */
+  public StatusLog(int mCapacity) {
+    gLines = new String[Math.max(1, mCapacity)];
+  }
+
+  /*************
+   * Starts appending evicted messages to the given file, replacing any
+   * previous spill file
+   * @param mFile the file, or null to stop spilling
+   * @throws IOException if the file can't be opened
+   */
+  public void setSpillFile(File mFile) throws IOException {
+    closeSpill();
+    if(mFile != null) { gSpill = new BufferedWriter(new FileWriter(mFile, true)); }
+  }
+
+  /*************
+   * Adds a message, evicting the oldest one if the log is full
+   * @param mLine the message
+   * @return true if a message was evicted
+   */
+  public boolean add(String mLine) {
+    gTotal++;
+    if(gSize < gLines.length) {
+      gLines[(gFirst + gSize) % gLines.length] = mLine;
+      gSize++;
+      return false;
+    }
+    spill(gLines[gFirst]);
+    gLines[gFirst] = mLine;
+    gFirst = (gFirst + 1) % gLines.length;
+    return true;
+  }
+
+  /*************
+   * Gets a message
+   * @param mIndex 0 for the oldest message held, size()-1 for the newest
+   * @return the message
+   */
+  public String get(int mIndex) {
+    if(mIndex < 0 || mIndex >= gSize) { throw new IndexOutOfBoundsException("" + mIndex); }
+    return gLines[(gFirst + mIndex) % gLines.length];
+  }
+
+  /*************
+   * Gets the number of messages held
+   */
+  public int size() { return gSize; }
+
+  /*************
+   * Gets the most messages this log holds
+   */
+  public int getCapacity() { return gLines.length; }
+
+  /*************
+   * Gets the number of messages ever added, including evicted ones
+   */
+  public long getTotal() { return gTotal; }
+
+  /*************
+   * Removes every message. Messages still held are not spilled.
+   */
+  public void clear() {
+    for(int i = 0; i < gLines.length; i++) { gLines[i] = null; }
+    gFirst = 0;
+    gSize = 0;
+    gTotal = 0;
+  }
+
+  /*************
+   * Removes the newest messages, as if they had never been added
+   * @param mCount how many to remove; all of them if there are fewer
+   * @return the number removed
+   */
+  public int removeLast(long mCount) {
+    int tRemoved = (int) Math.min(gSize, Math.max(0, mCount));
+    for(int i = 0; i < tRemoved; i++) {
+      gSize--;
+      gLines[(gFirst + gSize) % gLines.length] = null;
+    }
+    gTotal -= tRemoved;
+    return tRemoved;
+  }
+
+  /*************
+   * Removes every message and returns the ones held, oldest first. Only the
+   * slots in use are touched, so draining a nearly empty log is cheap.
+   * Messages are not spilled.
+   * @return the messages
+   */
+  public String[] drain() {
+    String[] tLines = new String[gSize];
+    for(int i = 0; i < gSize; i++) {
+      int tSlot = (gFirst + i) % gLines.length;
+      tLines[i] = gLines[tSlot];
+      gLines[tSlot] = null;
+    }
+    gFirst = 0;
+    gSize = 0;
+    gTotal = 0;
+    return tLines;
+  }
+
+  /*************
+   * Hands the spill file, if any, over to another log, which appends its
+   * evicted messages to it from then on instead of this one
+   * @param mLog the log to take the file over
+   */
+  public void moveSpillTo(StatusLog mLog) {
+    if(mLog == this) { return; }
+    mLog.closeSpill();
+    mLog.gSpill = gSpill;
+    gSpill = null;
+  }
+
+  /*************
+   * Flushes and closes the spill file, if any
+   */
+  public void closeSpill() {
+    if(gSpill == null) { return; }
+    try {
+      gSpill.close();
+    } catch(IOException e) {
+      System.err.println("Error: could not close status spill file: " + e.getMessage());
+    }
+    gSpill = null;
+  }
+
+  private void spill(String mLine) {
+    if(gSpill == null) { return; }
+    try {
+      gSpill.write(mLine);
+      gSpill.write('\n');
+    } catch(IOException e) {
+      System.err.println("Error: could not write status spill file, spilling stopped: " + e.getMessage());
+      gSpill = null;
+    }
+  }
+}
@@ -0,0 +1,81 @@
+import javax.swing.AbstractListModel;
+
+/*****************
+ * StatusLogModel - shows a StatusLog in a JList. With a fixed cell size
+ * the JList only renders the rows that are visible, so the view stays
+ * cheap however many messages have been logged.
+ * Must only be used on the Event Dispatch Thread.
+ * @author Andy
+ *
+ */
+public class StatusLogModel extends AbstractListModel<String> {
+
+  private static final long serialVersionUID = 1L;
+
+  private StatusLog gLog;
+
+  /***************
+   * Constructor
+   * @param mLog the log to show
+   */
+  public StatusLogModel(StatusLog mLog) {
+    gLog = mLog;
+  }
+
+  /*************
+   * Gets the log this model shows
+   */
+  public StatusLog getLog() { return gLog; }
+
+  /*************
+   * Adds a message to the log and updates the view
+   * @param mLine the message
+   */
+  public void append(String mLine) {
+    if(gLog.add(mLine)) {
+      fireIntervalRemoved(this, 0, 0);
+    }
+    int tLast = gLog.size() - 1;
+    fireIntervalAdded(this, tLast, tLast);
+  }
+
+  /*************
+   * Adds several messages to the log with a single update of the view
+   * @param mLines the messages, oldest first
+   */
+  public void appendAll(String[] mLines) {
+    if(mLines.length == 0) { return; }
+    int tOldSize = gLog.size();
+    boolean bEvicted = false;
+    for(String tLine: mLines) {
+      if(gLog.add(tLine)) { bEvicted = true; }
+    }
+    int tSize = gLog.size();
+    if(tSize > tOldSize) { fireIntervalAdded(this, tOldSize, tSize - 1); }
+    // once the log is full every row shifts: refresh the old rows at once
+    if(bEvicted && tOldSize > 0) { fireContentsChanged(this, 0, tOldSize - 1); }
+  }
+
+  /*************
+   * Removes the newest messages and updates the view
+   * @param mCount how many to remove
+   */
+  public void removeLast(long mCount) {
+    int tSize = gLog.size();
+    int tRemoved = gLog.removeLast(mCount);
+    if(tRemoved > 0) { fireIntervalRemoved(this, tSize - tRemoved, tSize - 1); }
+  }
+
+  /*************
+   * Removes every message
+   */
+  public void clear() {
+    int tSize = gLog.size();
+    gLog.clear();
+    if(tSize > 0) { fireIntervalRemoved(this, 0, tSize - 1); }
+  }
+
+  public int getSize() { return gLog.size(); }
+
+  public String getElementAt(int mIndex) { return gLog.get(mIndex); }
+}
@@ -0,0 +1,41 @@
+/*****************
+ * StepTracker - works out from a program's events which of them start a
+ * step, for listeners that count steps: SimulationStats, SimulationProfiler
+ * and TraceRecorder. Every instruction executed is a step, and so is every
+ * frame popped once it has finished; with tail calls eliminated, though,
+ * the caller's frame is popped in the same step as the call instruction.
+ * Listeners aren't told whether tail calls are eliminated, so a pop that
+ * comes straight after a tail call instruction, with no push in between,
+ * is taken to be part of that instruction's step.
+ *
+ * A listener passes it every push and every instruction, and asks
+ * isOwnStep() on each pop.
+ * @author Andy
+ *
+ */
+public final class StepTracker {
+
+  private boolean bTailCall;     // the last event was a tail call instruction
+
+  /*************
+   * Notes that a frame was pushed
+   */
+  public void pushed() { bTailCall = false; }
+
+  /*************
+   * Notes that an instruction was executed, taking a step
+   * @param mInstruction the instruction
+   */
+  public void executed(Instruction mInstruction) { bTailCall = mInstruction.isTailCall(); }
+
+  /*************
+   * Returns true if the pop being reported takes a step of its own, false
+   * if it is a tail call's
+   */
+  public boolean isOwnStep() { return !bTailCall; }
+
+  /*************
+   * Forgets the last event, for when the program is rewound
+   */
+  public void reset() { bTailCall = false; }
+}
@@ -0,0 +1,66 @@
+/**
+* This class makes any Deque safe to share between threads by locking it
+* for every operation. It is the simple alternative to WorkStealingDeque.
+*
+* @author Ani Laliashvili @author Sarah Gregory
+*/
+
+public class SynchronizedDeque<T> implements Deque<T> {
+    private final Deque<T> deque; // the deque being guarded; only used while holding this
+
+    public SynchronizedDeque(Deque<T> deque) {
+        this.deque = deque;
+    } // end constructor
+
+    public synchronized void addFront(T item){
+        deque.addFront(item);
+    }
+
+    public synchronized T removeFront(){
+        return deque.removeFront();
+    }
+
+    public synchronized void addBack(T item){
+        deque.addBack(item);
+    }
+
+    public synchronized T removeBack(){
+        return deque.removeBack();
+    }
+
+    public synchronized T peekFront(){
+        return deque.peekFront();
+    }
+
+    public synchronized T peekBack(){
+        return deque.peekBack();
+    }
+
+    public synchronized boolean isEmpty(){
+        return deque.isEmpty();
+    }
+
+    public synchronized void clear(){
+        deque.clear();
+    }
+
+    /**
+     * Removes the item from the front of this deque, and returns it.
+     * @return the item at the front, or null if the deque is empty
+     */
+    public synchronized T pollFront(){
+        return deque.isEmpty() ? null : deque.removeFront();
+    }
+
+    /**
+     * Removes the item from the back of this deque, and returns it.
+     * @return the item at the back, or null if the deque is empty
+     */
+    public synchronized T pollBack(){
+        return deque.isEmpty() ? null : deque.removeBack();
+    }
+
+    public synchronized String toString(){
+        return deque.toString();
+    }
+}
@@ -0,0 +1,96 @@
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Testing code for the chunked array deque. If all tests pass, nothing is
+ * printed. If a test fails, a message is printed to narrow down the cause
+ * of the errors.
+ */
+public class TestChunkedArrayDeque {
+
+    /**
+     * main takes no command line arguments. It checks the empty deque,
+     * pushes and pops across many chunk boundaries from both ends, and then
+     * compares a long random mix of operations against java.util.ArrayDeque.
+     */
+    public static void main(String[] args) {
+        ChunkedArrayDeque<Integer> deque = new ChunkedArrayDeque<Integer>();
+
+        //An empty deque must throw on every remove and peek
+        try {
+            deque.peekFront();
+            System.out.println("Called peekFront on an empty deque, but no exception was thrown");
+        } catch(NoSuchElementException e) {
+            ;//Nothing to do - we want an exception
+        }
+        try {
+            deque.removeBack();
+            System.out.println("Called removeBack on an empty deque, but no exception was thrown");
+        } catch(NoSuchElementException e) {
+            ;//Nothing to do - we want an exception
+        }
+
+        //Use it as a stack, like CallStack does, deep enough to need many chunks
+        int maxValue = 10 * ChunkedArrayDeque.CHUNK_SIZE + 7;
+        for(int i = 0; i < maxValue; i++) {
+            deque.addFront(i);
+            if(deque.peekFront() != i) {
+                System.out.println("Just added " + i + " to front, but peek is " + deque.peekFront());
+            }
+            if(deque.peekBack() != 0) {
+                System.out.println("0 should be back of deque, but it's " + deque.peekBack());
+            }
+        }
+        if(deque.size() != maxValue) {
+            System.out.println("Added " + maxValue + " items but size is " + deque.size());
+        }
+        for(int i = maxValue - 1; i >= 0; i--) {
+            int removed = deque.removeFront();
+            if(removed != i) {
+                System.out.println("Should have removed " + i + " but actual removed value is " + removed);
+            }
+        }
+        if(!deque.isEmpty()) {
+            System.out.println("Everything removed but deque not empty - peek front is " + deque.peekFront());
+        }
+
+        //Same from the back, then clear in the middle of it
+        for(int i = 0; i < maxValue; i++) {
+            deque.addBack(i);
+        }
+        deque.clear();
+        if(!deque.isEmpty()) {
+            System.out.println("isEmpty() returns false directly after deque is cleared.");
+        }
+
+        //Random mix of operations, checked against ArrayDeque
+        Random random = new Random(17);
+        ArrayDeque<Integer> expected = new ArrayDeque<Integer>();
+        for(int step = 0; step < 200000; step++) {
+            int value = random.nextInt();
+            switch(random.nextInt(step % 20000 < 10000 ? 5 : 4)) {
+                case 0: deque.addFront(value); expected.addFirst(value); break;
+                case 1: deque.addBack(value); expected.addLast(value); break;
+                case 2: if(!expected.isEmpty() && !deque.removeFront().equals(expected.removeFirst())) {
+                            System.out.println("removeFront returned the wrong item at step " + step);
+                        }
+                        break;
+                case 3: if(!expected.isEmpty() && !deque.removeBack().equals(expected.removeLast())) {
+                            System.out.println("removeBack returned the wrong item at step " + step);
+                        }
+                        break;
+                default: deque.addFront(value); expected.addFirst(value); break;
+            }
+            if(deque.size() != expected.size()) {
+                System.out.println("Size should be " + expected.size() + " but is " + deque.size() + " at step " + step);
+                return;
+            }
+            if(!expected.isEmpty() && (!deque.peekFront().equals(expected.peekFirst())
+                    || !deque.peekBack().equals(expected.peekLast()))) {
+                System.out.println("Front or back is wrong at step " + step);
+                return;
+            }
+        }
+    }
+}
@@ -173,6 +173,46 @@ public class TestCircularArrayDequeImplementation {
                 System.out.println("Front should be " + frontValue + " but is " + deque.peekFront());
             }
         }
+
+        //Removed items must not stay in the array, or they can't be garbage collected
+        CircularArrayDequeImplementation<Integer> circular = new CircularArrayDequeImplementation<Integer>();
+        for(int i = 0; i < 5; i++) {
+            circular.addFront(i);
+            circular.addBack(-i);
+        }
+        while(!circular.isEmpty()) {
+            circular.removeFront();
+            if(!circular.isEmpty()) { circular.removeBack(); }
+        }
+        Object[] slots = ((CircularArrayDequeImplementation<?>) circular).items;
+        for(int i = 0; i < slots.length; i++) {
+            if(slots[i] != null) {
+                System.out.println("Slot " + i + " still holds " + slots[i] + " after everything was removed");
+            }
+        }
+
+        //The array should grow when needed and shrink again once it is mostly empty,
+        //keeping the items in order across the wraparound
+        int bigValue = 10000;
+        for(int i = 0; i < bigValue; i++) {
+            circular.addFront(i);
+        }
+        if(circular.size() != bigValue) {
+            System.out.println("Added " + bigValue + " items but size is " + circular.size());
+        }
+        for(int i = bigValue - 1; i >= 10; i--) {
+            int removed = circular.removeFront();
+            if(removed != i) {
+                System.out.println("Should have removed " + i + " but actual removed value is " + removed);
+            }
+        }
+        slots = ((CircularArrayDequeImplementation<?>) circular).items;
+        if(slots.length > 4 * CircularArrayDequeImplementation.MIN_CAPACITY) {
+            System.out.println("Only 10 items left but the array still has " + slots.length + " slots");
+        }
+        if(circular.peekFront() != 9 || circular.peekBack() != 0) {
+            System.out.println("Front and back should be 9 and 0 but are " + circular.peekFront() + " and " + circular.peekBack());
+        }
     }
 
 }
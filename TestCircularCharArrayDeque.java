@@ -0,0 +1,82 @@
+import java.util.NoSuchElementException;
+
+/**
+ * Testing code for the primitive circular array deques used by the
+ * syntax checker. Like TestCircularArrayDequeImplementation, nothing is
+ * printed if all tests pass.
+ * @author Ani Laliashvili
+ */
+public class TestCircularCharArrayDeque {
+
+    public static void main(String[] args) {
+        CircularCharArrayDeque deque = new CircularCharArrayDeque();
+        String delimiters = "([{([{([{([{([{([{([{";
+
+        //Push every delimiter to the front, past the initial capacity
+        for(int i = 0; i < delimiters.length(); i++) {
+            deque.addFront(delimiters.charAt(i));
+            if(deque.peekFront() != delimiters.charAt(i)) {
+                System.out.println("Just added " + delimiters.charAt(i) + " to front, but peek is " + deque.peekFront());
+            }
+            if(deque.peekBack() != '(') {
+                System.out.println("( should be back of deque, but it's " + deque.peekBack());
+            }
+        }
+
+        //Pop them back off in reverse order, like the syntax checker does
+        for(int i = delimiters.length() - 1; i >= 0; i--) {
+            char removed = deque.removeFront();
+            if(removed != delimiters.charAt(i)) {
+                System.out.println("Should have removed " + delimiters.charAt(i) + " but actual removed value is " + removed);
+            }
+        }
+        if(!deque.isEmpty()) {
+            System.out.println("Everything removed but deque not empty - peek front is " + deque.peekFront());
+        }
+
+        try {
+            deque.removeFront();
+            System.out.println("Called removeFront on an empty deque, but no exception was thrown");
+        } catch(NoSuchElementException e) {
+            ;//Nothing to do - we want an exception when removing from an empty deque
+        }
+
+        //The int deque works the same way; add to the back and remove from the front
+        CircularIntArrayDeque ints = new CircularIntArrayDeque();
+        int maxValue = 50;
+        for(int i = 0; i < maxValue; i++) {
+            ints.addBack(i);
+            if(ints.peekBack() != i) {
+                System.out.println("Just added " + i + " to back, but peek is " + ints.peekBack());
+            }
+        }
+        for(int i = 0; i < maxValue; i++) {
+            int removed = ints.removeFront();
+            if(removed != i) {
+                System.out.println("Just removed " + i + " from front, but actual removed value is " + removed);
+            }
+        }
+
+        //Add to both ends so the items wrap around the array while it grows, then drain it so it shrinks
+        for(int i = 0; i < 100; i++) {
+            ints.addFront(-i);
+            ints.addBack(i);
+        }
+        for(int i = 99; i >= 0; i--) {
+            int front = ints.removeFront();
+            int back = ints.removeBack();
+            if(front != -i || back != i) {
+                System.out.println("Expected " + -i + " and " + i + " at the ends, but removed " + front + " and " + back);
+            }
+            if(ints.size() != 2 * i) {
+                System.out.println("Size should be " + 2 * i + " but is " + ints.size());
+            }
+        }
+
+        ints.addBack(1);
+        ints.clear();
+        if(!ints.isEmpty()) {
+            System.out.println("isEmpty() returns false directly after deque is cleared.");
+        }
+    }
+}
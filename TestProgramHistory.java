@@ -0,0 +1,178 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Testing code for ProgramHistory. Steps programs back and forth at random
+ * and checks each time that the program is just as a fresh run of it would
+ * be after as many steps, then checks that the frame budget holds and that
+ * every frame held is counted in it. If all tests pass, nothing is printed.
+ */
+public class TestProgramHistory {
+
+    private static final int MOVES = 150;
+
+    // calls go up and down a chain of methods, some of them tail calls
+    private static final String CHAIN = chain(200);
+
+    // never returns: the stack grows by a frame every few steps, as in program-error-comments-2
+    private static final String RECURSE = "def main() {\n  print \"in main\"\n  foobar();\n}\n\n"
+            + "def foobar() {\n  main();\n  print \"after main\"\n}\n";
+
+    // tail calls forever: with them eliminated, the stack stays one frame deep
+    private static final String LOOP = "def main() {\n  print \"go\"\n  loop();\n}\n\n"
+            + "def loop() {\n  print \"x\"\n  other();\n  loop();\n}\n\n"
+            + "def other() {\n  print \"y\"\n}\n";
+
+    private static final SimulationListener QUIET = new SimulationListener() {
+        public void methodPushed(Frame mFrame) { }
+        public void methodPopped(Frame mFrame) { }
+        public void outputEmitted(Instruction mInstruction) { }
+        public void stackOverflowed(Program mProgram, StackOverflowException mError) { }
+        public void programFinished(Program mProgram) { }
+    };
+
+    /**
+     * main takes no command line arguments
+     */
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(23);
+
+        //Step back and forth, with room for every checkpoint and with so little that they are thinned
+        for(long budget: new long[] { ProgramHistory.DEFAULT_BUDGET, 500 }) {
+            checkSteppingBack("chain", CHAIN, false, Long.MAX_VALUE, budget, random);
+            checkSteppingBack("chain with tail calls", CHAIN, true, Long.MAX_VALUE, budget, random);
+            checkSteppingBack("recursion", RECURSE, false, Long.MAX_VALUE, budget, random);
+            checkSteppingBack("overflowing recursion", RECURSE, false, 20000, budget, random);
+            checkSteppingBack("tail loop", LOOP, true, Long.MAX_VALUE, budget, random);
+        }
+
+        //A stack that only grows: the checkpoints can't hold less than one copy of it
+        checkBudget("recursion", RECURSE, false, 2000000, 20000);
+        //A stack that stays shallow: the budget holds
+        checkBudget("tail loop", LOOP, true, 2000000, 100);
+        checkBudget("chain", CHAIN, false, 2000000, 1000);
+    }
+
+    /**
+     * Moves a program back and forth at random, comparing it with a fresh
+     * run after every move
+     */
+    private static void checkSteppingBack(String name, String source, boolean tailCalls, long memory,
+            long budget, Random random) throws IOException, SyntaxErrorException {
+        ProgramImage image = ProgramImage.read(name, new StringReader(source));
+        ProgramHistory history = new ProgramHistory(QUIET, budget);
+        Program program = newProgram(image, history, tailCalls, memory);
+        history.setProgram(program);
+        for(int move = 0; move < MOVES; move++) {
+            if(random.nextInt(3) > 0) {
+                int steps = random.nextInt(6000);
+                for(int i = 0; i < steps && !program.isFinished(); i++) { history.step(); }
+            } else {
+                history.stepBack(random.nextInt(random.nextBoolean() ? 5000 : 50));
+            }
+            String problem = compare(program, image, tailCalls, memory);
+            if(problem != null) {
+                System.out.println(name + " (budget " + budget + "), move " + move + ": " + problem);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Runs a program forward and checks that the checkpoints hold no more
+     * frames than the budget, or than one copy of the stack if that is more,
+     * and that nothing held leads to a checkpoint that was dropped
+     */
+    private static void checkBudget(String name, String source, boolean tailCalls, long steps, long budget)
+            throws IOException, SyntaxErrorException {
+        ProgramImage image = ProgramImage.read(name, new StringReader(source));
+        ProgramHistory history = new ProgramHistory(QUIET, budget);
+        Program program = newProgram(image, history, tailCalls, Long.MAX_VALUE);
+        history.setProgram(program);
+        for(long i = 0; i < steps; i++) {
+            if(program.isFinished()) { history.reset(); }
+            history.step();
+        }
+
+        Set<ProgramCheckpoint> reachable = Collections.newSetFromMap(new IdentityHashMap<ProgramCheckpoint, Boolean>());
+        long frames = 0;
+        int newestDepth = 0;
+        for(int i = 0; i < history.getCheckpoints(); i++) {
+            for(ProgramCheckpoint c = history.getCheckpoint(i); c != null && reachable.add(c); c = c.getBase()) {
+                frames += c.getOwnFrames();
+            }
+            newestDepth = history.getCheckpoint(i).getDepth();
+        }
+        if(reachable.size() != history.getCheckpoints()) {
+            System.out.println(name + ": " + history.getCheckpoints() + " checkpoints held, but "
+                    + reachable.size() + " can be reached from them");
+        }
+        if(frames != history.getFramesKept()) {
+            System.out.println(name + ": " + history.getFramesKept() + " frames counted, but "
+                    + frames + " can be reached");
+        }
+        if(frames > Math.max(budget, 2L * newestDepth)) {
+            System.out.println(name + ": " + frames + " frames kept, over the budget of " + budget
+                    + " and twice the newest checkpoint's " + newestDepth + " frames");
+        }
+    }
+
+    private static Program newProgram(ProgramImage image, SimulationListener listener, boolean tailCalls, long memory) {
+        Program program = new Program(image, listener);
+        program.setTailCallElimination(tailCalls);
+        if(memory != Long.MAX_VALUE) { program.setMemoryLimit(memory); }
+        return program;
+    }
+
+    /**
+     * Compares a program with a fresh run of the same image for as many steps
+     * @return what differs, or null if nothing does
+     */
+    private static String compare(Program program, ProgramImage image, boolean tailCalls, long memory) {
+        Program fresh = newProgram(image, QUIET, tailCalls, memory);
+        while(fresh.getSteps() < program.getSteps() && !fresh.isFinished()) { fresh.step(QUIET); }
+        if(fresh.getSteps() != program.getSteps()) {
+            return "at step " + program.getSteps() + ", but a fresh run finishes at " + fresh.getSteps();
+        }
+        if(fresh.getOutputs() != program.getOutputs() || fresh.isFinished() != program.isFinished()
+                || fresh.isStackOverflowed() != program.isStackOverflowed()) {
+            return "at step " + program.getSteps() + ", outputs or flags differ from a fresh run";
+        }
+        ProgramCheckpoint expected = fresh.checkpoint();
+        ProgramCheckpoint actual = program.checkpoint();
+        if(expected.getDepth() != actual.getDepth()) {
+            return "at step " + program.getSteps() + ", " + actual.getDepth() + " frames on the stack instead of "
+                    + expected.getDepth();
+        }
+        Frame[] expectedFrames = expected.getFrames();
+        Frame[] actualFrames = actual.getFrames();
+        for(int i = 0; i < expectedFrames.length; i++) {
+            if(expectedFrames[i].getMethod() != actualFrames[i].getMethod()
+                    || expectedFrames[i].getTicks() != actualFrames[i].getTicks()) {
+                return "at step " + program.getSteps() + ", frame " + i + " differs from a fresh run";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A program whose main calls the first of a chain of methods a few times
+     */
+    private static String chain(int length) {
+        StringBuilder source = new StringBuilder("def main() {\n  m0();\n  print \"again\"\n  m0();\n  m0();\n}\n\n");
+        for(int i = 0; i < length; i++) {
+            source.append("def m").append(i).append("() {\n  print \"in m").append(i).append("\"\n");
+            if(i + 1 < length) {
+                source.append("  m").append(i + 1).append("();\n");
+                //every third method ends with its call, so it is a tail call
+                if(i % 3 != 0) { source.append("  print \"back in m").append(i).append("\"\n"); }
+            }
+            source.append("}\n\n");
+        }
+        return source.toString();
+    }
+}
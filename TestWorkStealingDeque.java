@@ -0,0 +1,96 @@
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Stress test for the work-stealing deque. If all tests pass, nothing is
+ * printed. If a test fails, a message is printed to narrow down the cause
+ * of the errors.
+ */
+public class TestWorkStealingDeque {
+
+    private static final int ITEMS = 2000000;
+    private static final int THIEVES = 3;
+
+    /**
+     * main takes no command line arguments. It checks the single-threaded
+     * contract, then has one owner push and pop while several thieves steal,
+     * and checks that every item was taken exactly once.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        WorkStealingDeque<Integer> deque = new WorkStealingDeque<Integer>();
+
+        //Single-threaded, the owner end is a stack and the back is the oldest item
+        for(int i = 0; i < 100; i++) {
+            deque.addFront(i);
+            if(deque.peekFront() != i || deque.peekBack() != 0) {
+                System.out.println("After adding " + i + ", front and back are " + deque.peekFront() + " and " + deque.peekBack());
+            }
+        }
+        if(deque.removeBack() != 0 || deque.removeFront() != 99 || deque.size() != 98) {
+            System.out.println("Removing from both ends of 0..99 went wrong");
+        }
+        deque.clear();
+        try {
+            deque.removeFront();
+            System.out.println("Called removeFront on an empty deque, but no exception was thrown");
+        } catch(NoSuchElementException e) {
+            ;//Nothing to do - we want an exception
+        }
+        if(deque.steal() != null) {
+            System.out.println("Stole from an empty deque");
+        }
+
+        //Now with thieves
+        final WorkStealingDeque<Integer> shared = new WorkStealingDeque<Integer>();
+        final AtomicIntegerArray taken = new AtomicIntegerArray(ITEMS);
+        final AtomicBoolean done = new AtomicBoolean();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] thieves = new Thread[THIEVES];
+        for(int i = 0; i < THIEVES; i++) {
+            thieves[i] = new Thread() {
+                public void run() {
+                    try { start.await(); } catch(InterruptedException e) { return; }
+                    while(!done.get() || !shared.isEmpty()) {
+                        Integer item = shared.steal();
+                        if(item != null) { taken.incrementAndGet(item); }
+                    }
+                }
+            };
+            thieves[i].setDaemon(true);
+            thieves[i].start();
+        }
+        start.countDown();
+        //The owner keeps the deque short, so it often races the thieves for the last item
+        for(int i = 0; i < ITEMS; i++) {
+            shared.addFront(i);
+            if(i % 3 == 0) {
+                Integer item = shared.pollFront();
+                if(item != null) { taken.incrementAndGet(item); }
+            }
+            if(i % 100000 == 0) {
+                //and sometimes long, so the array has to grow while thieves read it
+                for(int j = 0; j < 1000 && i + 1 < ITEMS; j++) { shared.addFront(++i); }
+            }
+        }
+        done.set(true);
+        for(Thread thief: thieves) {
+            thief.join(60000);
+            if(thief.isAlive()) {
+                System.out.println("A thief is still running a minute after the owner finished; the deque never looks empty");
+                return;
+            }
+        }
+
+        int missing = 0;
+        int duplicated = 0;
+        for(int i = 0; i < ITEMS; i++) {
+            if(taken.get(i) == 0) { missing++; }
+            if(taken.get(i) > 1) { duplicated++; }
+        }
+        if(missing > 0 || duplicated > 0) {
+            System.out.println(missing + " items were never taken and " + duplicated + " were taken more than once");
+        }
+    }
+}
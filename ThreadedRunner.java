@@ -0,0 +1,185 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*****************
+ * ThreadedRunner - runs many Programs at once, each on its own thread.
+ * Every program steps in a loop on its thread and yields whenever a method
+ * is called or returns, so thousands of simulated programs share the CPU.
+ *
+ * With virtual threads (Java 21 and later) each program gets a virtual
+ * thread. The platform mode runs the same tasks on a fixed pool of
+ * ordinary threads, for comparison. Virtual threads are looked up
+ * reflectively so the simulator still builds on older JDKs, where the
+ * virtual mode falls back to the platform pool.
+ *
+ * Usage: java ThreadedRunner [-m virtual|platform|both] [-c copies] [-n maxSteps] file.fakejava
+ *   -m  which kind of threads to use (default both, one after the other)
+ *   -c  how many copies of the program to run concurrently (default 10000)
+ *   -n  most steps each copy runs (default 100000)
+ *
+ * @author Andy
+ *
+ */
+public class ThreadedRunner {
+
+  private boolean bVirtual;         // virtual threads rather than a platform pool
+  private int gPoolSize;            // platform threads in the pool
+  private LongAdder gTotalSteps;    // steps executed by every task so far
+
+  /***************
+   * Constructor
+   * @param mVirtual true to run each program on a virtual thread
+   * @param mPoolSize number of platform threads to use otherwise
+   */
+  public ThreadedRunner(boolean mVirtual, int mPoolSize) {
+    bVirtual = mVirtual;
+    gPoolSize = Math.max(1, mPoolSize);
+    gTotalSteps = new LongAdder();
+  }
+
+  /*************
+   * Returns true if this JVM supports virtual threads
+   */
+  public static boolean hasVirtualThreads() {
+    try {
+      Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return true;
+    } catch(NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+  private static ExecutorService newVirtualExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch(ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  /*************
+   * Runs copies of the given program to completion (or mMaxSteps each) and
+   * waits for all of them
+   * @param mImage the compiled program to run
+   * @param mCopies how many copies to run at once
+   * @param mMaxSteps the most steps each copy runs
+   * @return the steps executed, across all copies
+   */
+  public long run(ProgramImage mImage, int mCopies, long mMaxSteps) throws InterruptedException {
+    ExecutorService tExecutor = bVirtual ? newVirtualExecutor() : null;
+    if(tExecutor == null) { tExecutor = Executors.newFixedThreadPool(gPoolSize); }
+
+    List<Task> tTasks = new ArrayList<Task>(mCopies);
+    for(int i = 0; i < mCopies; i++) {
+      tTasks.add(new Task(mImage, mMaxSteps));
+    }
+    for(Task tTask: tTasks) {
+      tExecutor.execute(tTask);
+    }
+    tExecutor.shutdown();
+    tExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    return gTotalSteps.sum();
+  }
+
+  /*************
+   * Gets the steps executed so far, across all programs. Safe to call from
+   * any thread while run() is in progress.
+   */
+  public long getTotalSteps() { return gTotalSteps.sum(); }
+
+  /*****************
+   * One program running on one thread. It is its program's only listener,
+   * and is only ever touched by that thread.
+   */
+  private class Task implements Runnable, SimulationListener {
+    private Program gProgram;
+    private long gMaxSteps;
+    private boolean bBoundary;      // a method was called or returned this step
+
+    Task(ProgramImage mImage, long mMaxSteps) {
+      gProgram = new Program(mImage, this);
+      gMaxSteps = mMaxSteps;
+    }
+
+    public void run() {
+      long tSteps = 0;
+      long tReported = 0;
+      while(!gProgram.isFinished() && tSteps < gMaxSteps) {
+        gProgram.step(this);
+        tSteps++;
+        if(bBoundary) {
+          bBoundary = false;
+          gTotalSteps.add(tSteps - tReported);
+          tReported = tSteps;
+          Thread.yield();
+        }
+      }
+      gTotalSteps.add(tSteps - tReported);
+    }
+
+    public void methodPushed(Frame mFrame) { bBoundary = true; }
+
+    public void methodPopped(Frame mFrame) { bBoundary = true; }
+
+    public void outputEmitted(Instruction mInstruction) { }
+
+    public void stackOverflowed(Program mProgram, StackOverflowException mError) { }
+
+    public void programFinished(Program mProgram) { }
+  }
+
+  public static void main(String[] args) throws Exception {
+    String tMode = "both";
+    int tCopies = 10000;
+    long tMaxSteps = 100000;
+    String tFile = null;
+    for(int i = 0; i < args.length; i++) {
+      if(args[i].equals("-m") && i + 1 < args.length) { tMode = args[++i]; }
+      else if(args[i].equals("-c") && i + 1 < args.length) { tCopies = Integer.parseInt(args[++i]); }
+      else if(args[i].equals("-n") && i + 1 < args.length) { tMaxSteps = Long.parseLong(args[++i]); }
+      else { tFile = args[i]; }
+    }
+    if(tFile == null) {
+      System.err.println("Usage: java ThreadedRunner [-m virtual|platform|both] [-c copies] [-n maxSteps] file.fakejava");
+      System.exit(2);
+    }
+
+    ProgramImage tImage = null;
+    try {
+      tImage = ProgramCache.shared().load(new File(tFile));
+    } catch(SyntaxErrorException e) {
+      System.err.println("Syntax error in " + tFile + ":");
+      System.err.println(e.getMessage());
+      System.exit(1);
+    } catch(IOException e) {
+      System.err.println("Error: File " + tFile + " could not be read!");
+      System.exit(1);
+    }
+
+    int tPool = Runtime.getRuntime().availableProcessors();
+    if(!tMode.equals("platform") && !hasVirtualThreads()) {
+      System.err.println("Virtual threads need Java 21 or later; using a pool of " + tPool + " platform threads instead.");
+    }
+    if(tMode.equals("virtual") || tMode.equals("both")) {
+      measure(hasVirtualThreads() ? "virtual" : "virtual (platform fallback)", new ThreadedRunner(true, tPool), tImage, tCopies, tMaxSteps);
+    }
+    if(tMode.equals("platform") || tMode.equals("both")) { measure("platform", new ThreadedRunner(false, tPool), tImage, tCopies, tMaxSteps); }
+  }
+
+  private static void measure(String mLabel, ThreadedRunner mRunner, ProgramImage mImage, int mCopies, long mMaxSteps)
+      throws InterruptedException {
+    Runtime tRuntime = Runtime.getRuntime();
+    long tStart = System.nanoTime();
+    long tSteps = mRunner.run(mImage, mCopies, mMaxSteps);
+    long tElapsed = Math.max(1, System.nanoTime() - tStart);
+    long tHeap = (tRuntime.totalMemory() - tRuntime.freeMemory()) / (1024 * 1024);
+    System.err.println(mLabel + ": " + mCopies + " programs, " + tSteps + " steps in " + (tElapsed / 1000000)
+        + " ms (" + (long) (tSteps * 1e9 / tElapsed) + " steps/sec), " + tHeap + " MB heap in use");
+  }
+}
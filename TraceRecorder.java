@@ -0,0 +1,210 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/*****************
+ * TraceRecorder - writes everything a running Program does to a compact
+ * binary trace file, so a long run recorded on one machine can be replayed
+ * on another by a TraceReplayer without interpreting the program again.
+ * Like SimulationStats, it sits in front of a program's real listener and
+ * passes every event on.
+ *
+ * A trace is the bytes "VMTR", a version byte and the program's name,
+ * followed by one record per event: an opcode byte, then its operands as
+ * unsigned LEB128 varints.
+ *   PUSH id, POP, TAIL_POP   a frame pushed; popped in a step of its own,
+ *                            or by a tail call
+ *   OUTPUT id                an instruction's status message
+ *   OVERFLOW id              a stack overflow, with its message
+ *   FINISH                   the program finished
+ *   METHOD id size name      defines a method id, before its first PUSH
+ *   STRING id text           defines a string id, before its first use
+ * Strings are a varint byte count and UTF-8. Each method and each distinct
+ * message is written out once, so a step usually takes two or three bytes.
+ * Records go through a direct buffer and are written to a FileChannel when
+ * it fills up.
+ *
+ * Listener methods can't throw IOExceptions: the first one stops recording,
+ * and getError() returns it.
+ * @author Andy
+ *
+ */
+public class TraceRecorder implements SimulationListener {
+
+  public static final byte[] MAGIC = { 'V', 'M', 'T', 'R' };
+  public static final int VERSION = 1;
+
+  public static final int PUSH = 1;
+  public static final int POP = 2;
+  public static final int TAIL_POP = 3;
+  public static final int OUTPUT = 4;
+  public static final int OVERFLOW = 5;
+  public static final int FINISH = 6;
+  public static final int METHOD = 7;
+  public static final int STRING = 8;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final int MAX_RECORD = 11;        // opcode and one 64-bit varint
+
+  private SimulationListener gListener;            // the listener events are passed on to
+  private FileChannel gChannel;
+  private ByteBuffer gBuffer;
+  private IOException gError;                       // the first write that failed, if any
+  private boolean[] gDefined = new boolean[16];     // method ids written out so far
+  private Map<String, Integer> gStrings = new IdentityHashMap<String, Integer>();
+  private final StepTracker gTracker = new StepTracker();
+
+  /***************
+   * Constructor - creates the trace file, replacing any file already there
+   * @param mListener the listener to pass every event on to
+   * @param mFile the file to write
+   * @param mName the name of the program being recorded
+   */
+  public TraceRecorder(SimulationListener mListener, File mFile, String mName) throws IOException {
+    gListener = mListener;
+    gChannel = FileChannel.open(mFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+    gBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    gBuffer.put(MAGIC);
+    gBuffer.put((byte) VERSION);
+    putString(mName);
+  }
+
+  /*************
+   * Gets the error that stopped recording
+   * @return the error, or null if every write so far succeeded
+   */
+  public IOException getError() { return gError; }
+
+  /*************
+   * Writes out everything recorded so far
+   */
+  public void flush() {
+    if(gError != null) { return; }
+    try {
+      gBuffer.flip();
+      while(gBuffer.hasRemaining()) { gChannel.write(gBuffer); }
+      gBuffer.clear();
+    } catch(IOException e) {
+      gError = e;
+    }
+  }
+
+  /*************
+   * Writes out everything recorded so far and closes the file
+   * @throws IOException if a write failed, now or earlier
+   */
+  public void close() throws IOException {
+    flush();
+    gChannel.close();
+    if(gError != null) { throw gError; }
+  }
+
+  public void methodPushed(Frame mFrame) {
+    Method tMethod = mFrame.getMethod();
+    int tId = tMethod.getIndex();
+    if(tId >= gDefined.length || !gDefined[tId]) { define(tMethod); }
+    room(MAX_RECORD);
+    gBuffer.put((byte) PUSH);
+    putVarint(tId);
+    gTracker.pushed();
+    gListener.methodPushed(mFrame);
+  }
+
+  public void methodPopped(Frame mFrame) {
+    room(1);
+    gBuffer.put((byte) (gTracker.isOwnStep() ? POP : TAIL_POP));
+    gListener.methodPopped(mFrame);
+  }
+
+  public void outputEmitted(Instruction mInstruction) {
+    int tId = intern(mInstruction.getMessage());
+    room(MAX_RECORD);
+    gBuffer.put((byte) OUTPUT);
+    putVarint(tId);
+    gTracker.executed(mInstruction);
+    gListener.outputEmitted(mInstruction);
+  }
+
+  public void stackOverflowed(Program mProgram, StackOverflowException mError) {
+    int tId = intern(mError.getMessage());
+    room(MAX_RECORD);
+    gBuffer.put((byte) OVERFLOW);
+    putVarint(tId);
+    gListener.stackOverflowed(mProgram, mError);
+  }
+
+  public void programFinished(Program mProgram) {
+    room(1);
+    gBuffer.put((byte) FINISH);
+    flush();
+    gListener.programFinished(mProgram);
+  }
+
+  private void define(Method mMethod) {
+    int tId = mMethod.getIndex();
+    if(tId >= gDefined.length) {
+      boolean[] tDefined = new boolean[Math.max(tId + 1, 2 * gDefined.length)];
+      System.arraycopy(gDefined, 0, tDefined, 0, gDefined.length);
+      gDefined = tDefined;
+    }
+    gDefined[tId] = true;
+    room(2 * MAX_RECORD);
+    gBuffer.put((byte) METHOD);
+    putVarint(tId);
+    putVarint(mMethod.getSize());
+    putString(mMethod.getName());
+  }
+
+  /*************
+   * Gets the id of a string, writing its definition the first time.
+   * Messages are shared by every execution of their instruction, so the
+   * same String object comes back each time and identity is enough.
+   */
+  private int intern(String mText) {
+    Integer tId = gStrings.get(mText);
+    if(tId != null) { return tId; }
+    int tNew = gStrings.size();
+    gStrings.put(mText, tNew);
+    room(MAX_RECORD);
+    gBuffer.put((byte) STRING);
+    putVarint(tNew);
+    putString(mText);
+    return tNew;
+  }
+
+  private void putString(String mText) {
+    byte[] tBytes = mText.getBytes(StandardCharsets.UTF_8);
+    room(MAX_RECORD);
+    putVarint(tBytes.length);
+    for(int tDone = 0; tDone < tBytes.length; ) {
+      room(1);
+      int tChunk = Math.min(gBuffer.remaining(), tBytes.length - tDone);
+      gBuffer.put(tBytes, tDone, tChunk);
+      tDone += tChunk;
+    }
+  }
+
+  private void putVarint(long mValue) {
+    while((mValue & ~0x7FL) != 0) {
+      gBuffer.put((byte) ((mValue & 0x7F) | 0x80));
+      mValue >>>= 7;
+    }
+    gBuffer.put((byte) mValue);
+  }
+
+  /*************
+   * Makes room for mBytes more bytes in the buffer. After a failed write
+   * the buffer is just emptied, so recording carries on without effect.
+   */
+  private void room(int mBytes) {
+    if(gBuffer.remaining() >= mBytes) { return; }
+    flush();
+    if(gError != null) { gBuffer.clear(); }
+  }
+}
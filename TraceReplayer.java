@@ -0,0 +1,367 @@
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*****************
+ * TraceReplayer - plays back a trace written by TraceRecorder, producing
+ * the same SimulationSnapshots a SimulationWorker would have, without the
+ * program or an interpreter.
+ *
+ * The file is memory-mapped, in windows so traces over 2 GB work too.
+ * Opening it reads it through once, to learn the methods and strings and
+ * to keep a checkpoint every CHECKPOINT_INTERVAL steps: the file offset
+ * and the call stack there, as a StackSnapshot. Snapshots share the frames
+ * they have in common, so the checkpoints cost little memory. Seeking to a
+ * step starts from a checkpoint, so it reads at most CHECKPOINT_INTERVAL
+ * steps plus the messages shown.
+ *
+ * A trace cut short, by a run that was killed, plays up to the last step
+ * before the cut.
+ * @author Andy
+ *
+ */
+public class TraceReplayer {
+
+  public static final int CHECKPOINT_INTERVAL = 4096;     // steps between checkpoints
+  private static final long MAP_WINDOW = 1L << 28;         // bytes mapped at a time
+
+  private FileChannel gChannel;
+  private long gLength;                 // bytes in the file
+  private long gEnd;                    // offset after the last complete record
+  private MappedByteBuffer gWindow;     // the part of the file mapped now
+  private long gWindowStart;            // file offset of gWindow's first byte
+  private long gWindowEnd;
+  private long gPosition;               // file offset of the next byte to read
+
+  private String gName;
+  private Method[] gMethods = new Method[16];   // by id
+  private String[] gStrings = new String[64];   // by id
+  private long gTotalSteps;
+
+  // checkpoint i is the state after i * CHECKPOINT_INTERVAL steps
+  private long[] gCheckOffsets = new long[64];
+  private StackSnapshot[] gCheckStacks = new StackSnapshot[64];
+  private boolean[] gCheckOverflowed = new boolean[64];
+  private int gChecks;
+
+  // where playback is
+  private long gSteps;                  // steps played
+  private StackSnapshot gTop;           // the stack after them
+  private boolean bOverflowed;          // an overflow has been played
+
+  /***************
+   * Constructor - opens a trace and reads it through once
+   * @param mFile the trace
+   * @throws IOException if the file can't be read or isn't a trace
+   */
+  public TraceReplayer(File mFile) throws IOException {
+    gChannel = FileChannel.open(mFile.toPath(), StandardOpenOption.READ);
+    try {
+      gLength = gChannel.size();
+      gEnd = gLength;
+      gPosition = 0;
+      for(byte tByte: TraceRecorder.MAGIC) {
+        if(readByte() != tByte) { throw new IOException(mFile.getName() + " is not a trace"); }
+      }
+      int tVersion = readByte();
+      if(tVersion != TraceRecorder.VERSION) {
+        throw new IOException(mFile.getName() + " is a version " + tVersion + " trace; version "
+            + TraceRecorder.VERSION + " is supported");
+      }
+      gName = readString();
+      index();
+    } catch(EOFException e) {
+      gChannel.close();
+      throw new IOException(mFile.getName() + " is not a trace");
+    } catch(IOException e) {
+      gChannel.close();
+      throw e;
+    }
+  }
+
+  /*************
+   * Returns true if the given file starts like a trace
+   * @param mFile the file to look at
+   */
+  public static boolean isTrace(File mFile) {
+    byte[] tStart = new byte[TraceRecorder.MAGIC.length];
+    try(FileInputStream tIn = new FileInputStream(mFile)) {
+      return tIn.read(tStart) == tStart.length && Arrays.equals(tStart, TraceRecorder.MAGIC);
+    } catch(IOException e) {
+      return false;
+    }
+  }
+
+  /*************
+   * Gets the name of the program that was recorded
+   */
+  public String getName() { return gName; }
+
+  /*************
+   * Gets the methods the recorded program called, in the order it defines them
+   */
+  public List<Method> getMethodList() {
+    List<Method> tMethods = new ArrayList<Method>();
+    for(Method tMethod: gMethods) {
+      if(tMethod != null) { tMethods.add(tMethod); }
+    }
+    return tMethods;
+  }
+
+  /*************
+   * Gets the number of steps in the trace
+   */
+  public long getTotalSteps() { return gTotalSteps; }
+
+  /*************
+   * Gets the number of steps played so far
+   */
+  public long getSteps() { return gSteps; }
+
+  /*************
+   * Returns true once the whole trace has been played
+   */
+  public boolean isFinished() { return gSteps >= gTotalSteps; }
+
+  /*************
+   * Closes the trace file
+   */
+  public void close() throws IOException {
+    gWindow = null;
+    gChannel.close();
+  }
+
+  /*************
+   * Moves playback to just after the given step
+   * @param mStep the step, from 0 (before the first step) to getTotalSteps()
+   * @param mMessages the most status messages to return
+   * @return the stack there and the last mMessages messages produced up
+   *   to it; earlier messages are not counted as skipped
+   */
+  public SimulationSnapshot seek(long mStep, int mMessages) throws IOException {
+    long tStep = Math.max(0, Math.min(mStep, gTotalSteps));
+    int tMessages = Math.max(1, mMessages);
+    if(tStep == 0) {
+      // main is pushed before the first step's record, so playing no steps
+      // would still push it: before the first step, the stack is empty
+      from(0);
+      return new SimulationSnapshot(gTop, new String[0], 0, gSteps, isFinished());
+    }
+    // an instruction makes one message and a return none, so the messages
+    // may start further back than tMessages steps: go back further until
+    // there are enough of them
+    int tLast = (int) Math.min(gChecks - 1, tStep / CHECKPOINT_INTERVAL);
+    int tCheck = (int) Math.min(tLast, Math.max(0, tStep - tMessages) / CHECKPOINT_INTERVAL);
+    while(true) {
+      StatusLog tLog = new StatusLog(tMessages);
+      from(tCheck);
+      play(tStep - gSteps, tLog);
+      if(tLog.getTotal() >= tMessages || tCheck == 0) {
+        return new SimulationSnapshot(gTop, tLog.drain(), 0, gSteps, isFinished());
+      }
+      tCheck = Math.max(0, tCheck - 2 * (tLast - tCheck + 1));
+    }
+  }
+
+  /*************
+   * Plays the next mSteps steps, or as many as are left
+   * @param mSteps the number of steps
+   * @param mMessages the most status messages to return
+   * @return the stack after them and the messages they produced, keeping
+   *   the last mMessages and counting the rest as skipped
+   */
+  public SimulationSnapshot advance(long mSteps, int mMessages) throws IOException {
+    StatusLog tLog = new StatusLog(Math.max(1, mMessages));
+    play(mSteps, tLog);
+    long tSkipped = tLog.getTotal() - tLog.size();
+    return new SimulationSnapshot(gTop, tLog.drain(), tSkipped, gSteps, isFinished());
+  }
+
+  /*************
+   * Reads the trace from start to end, defining methods and strings and
+   * keeping checkpoints
+   */
+  private void index() throws IOException {
+    StackSnapshot tTop = null;
+    boolean tOverflowed = false;
+    long tSteps = 0;
+    long tStepStart = gPosition;          // offset of the record that started the last step
+    addCheckpoint(gPosition, null, false);
+    while(gPosition < gLength) {
+      long tRecord = gPosition;
+      try {
+        int tOp = readByte();
+        if(startsStep(tOp, tOverflowed)) {
+          if(tSteps > 0 && tSteps % CHECKPOINT_INTERVAL == 0) { addCheckpoint(tRecord, tTop, tOverflowed); }
+          tStepStart = tRecord;
+          tSteps++;
+        }
+        switch(tOp) {
+          case TraceRecorder.PUSH: tTop = StackSnapshot.push(tTop, method(readVarint())); break;
+          case TraceRecorder.POP:
+          case TraceRecorder.TAIL_POP: if(tTop != null) { tTop = tTop.getBelow(); } break;
+          case TraceRecorder.OUTPUT: string(readVarint()); break;
+          case TraceRecorder.OVERFLOW: string(readVarint()); tOverflowed = true; break;
+          case TraceRecorder.FINISH: break;
+          case TraceRecorder.METHOD: defineMethod(); break;
+          case TraceRecorder.STRING: defineString(); break;
+          default: throw new IOException("Corrupt trace: unknown record " + tOp + " at offset " + tRecord);
+        }
+      } catch(EOFException e) {
+        // the recording was cut off in this record: drop the step it belongs to,
+        // which may have had records before it
+        if(tSteps > 0) {
+          gEnd = tStepStart;
+          tSteps--;
+        } else {
+          gEnd = tRecord;
+        }
+        break;
+      }
+    }
+    gTotalSteps = tSteps;
+    gPosition = gCheckOffsets[0];
+    gSteps = 0;
+  }
+
+  /*************
+   * Plays up to mSteps steps from gPosition, stopping before the record
+   * that starts the step after them
+   */
+  private void play(long mSteps, StatusLog mLog) throws IOException {
+    long tTarget = Math.min(gTotalSteps, gSteps + mSteps);
+    while(gPosition < gEnd) {
+      long tRecord = gPosition;
+      int tOp = readByte();
+      if(startsStep(tOp, bOverflowed)) {
+        if(gSteps == tTarget) {
+          gPosition = tRecord;
+          return;
+        }
+        gSteps++;
+      }
+      switch(tOp) {
+        case TraceRecorder.PUSH: gTop = StackSnapshot.push(gTop, gMethods[(int) readVarint()]); break;
+        case TraceRecorder.POP:
+        case TraceRecorder.TAIL_POP: if(gTop != null) { gTop = gTop.getBelow(); } break;
+        case TraceRecorder.OUTPUT: mLog.add(gStrings[(int) readVarint()]); break;
+        case TraceRecorder.OVERFLOW: mLog.add(gStrings[(int) readVarint()]); bOverflowed = true; break;
+        case TraceRecorder.FINISH: break;
+        case TraceRecorder.METHOD: readVarint(); readVarint(); skipString(); break;
+        case TraceRecorder.STRING: readVarint(); skipString(); break;
+        default: throw new IOException("Corrupt trace: unknown record " + tOp + " at offset " + tRecord);
+      }
+    }
+  }
+
+  /*************
+   * Moves playback to checkpoint mCheck
+   */
+  private void from(int mCheck) {
+    gPosition = gCheckOffsets[mCheck];
+    gTop = gCheckStacks[mCheck];
+    bOverflowed = gCheckOverflowed[mCheck];
+    gSteps = (long) mCheck * CHECKPOINT_INTERVAL;
+  }
+
+  /*************
+   * Returns true if a record of this kind is the first of a step: an
+   * instruction, a pop of its own, or the end of a program that didn't
+   * overflow (an overflow ends the program in the step that overflowed)
+   */
+  private static boolean startsStep(int mOp, boolean mOverflowed) {
+    return mOp == TraceRecorder.OUTPUT || mOp == TraceRecorder.POP
+        || (mOp == TraceRecorder.FINISH && !mOverflowed);
+  }
+
+  private void addCheckpoint(long mOffset, StackSnapshot mTop, boolean mOverflowed) {
+    if(gChecks == gCheckOffsets.length) {
+      gCheckOffsets = Arrays.copyOf(gCheckOffsets, 2 * gChecks);
+      gCheckStacks = Arrays.copyOf(gCheckStacks, 2 * gChecks);
+      gCheckOverflowed = Arrays.copyOf(gCheckOverflowed, 2 * gChecks);
+    }
+    gCheckOffsets[gChecks] = mOffset;
+    gCheckStacks[gChecks] = mTop;
+    gCheckOverflowed[gChecks] = mOverflowed;
+    gChecks++;
+  }
+
+  private void defineMethod() throws IOException {
+    int tId = (int) readVarint();
+    int tSize = (int) readVarint();
+    String tName = readString();
+    if(tId >= gMethods.length) { gMethods = Arrays.copyOf(gMethods, Math.max(tId + 1, 2 * gMethods.length)); }
+    gMethods[tId] = new Method(tName, tSize);
+  }
+
+  private void defineString() throws IOException {
+    int tId = (int) readVarint();
+    String tText = readString();
+    if(tId >= gStrings.length) { gStrings = Arrays.copyOf(gStrings, Math.max(tId + 1, 2 * gStrings.length)); }
+    gStrings[tId] = tText;
+  }
+
+  private Method method(long mId) throws IOException {
+    if(mId >= gMethods.length || gMethods[(int) mId] == null) {
+      throw new IOException("Corrupt trace: method " + mId + " used before it was defined");
+    }
+    return gMethods[(int) mId];
+  }
+
+  private String string(long mId) throws IOException {
+    if(mId >= gStrings.length || gStrings[(int) mId] == null) {
+      throw new IOException("Corrupt trace: string " + mId + " used before it was defined");
+    }
+    return gStrings[(int) mId];
+  }
+
+  private int readByte() throws IOException {
+    if(gPosition >= gWindowEnd) { map(gPosition, 1); }
+    return gWindow.get((int) (gPosition++ - gWindowStart)) & 0xFF;
+  }
+
+  private long readVarint() throws IOException {
+    long tValue = 0;
+    for(int tShift = 0; tShift < 64; tShift += 7) {
+      int tByte = readByte();
+      tValue |= (long) (tByte & 0x7F) << tShift;
+      if((tByte & 0x80) == 0) { return tValue; }
+    }
+    throw new IOException("Corrupt trace: varint too long at offset " + gPosition);
+  }
+
+  private String readString() throws IOException {
+    int tLength = (int) readVarint();
+    if(gPosition + tLength > gWindowEnd) { map(gPosition, tLength); }
+    byte[] tBytes = new byte[tLength];
+    gWindow.get((int) (gPosition - gWindowStart), tBytes);
+    gPosition += tLength;
+    return new String(tBytes, StandardCharsets.UTF_8);
+  }
+
+  private void skipString() throws IOException {
+    long tLength = readVarint();
+    if(gPosition + tLength > gLength) { throw new EOFException(); }
+    gPosition += tLength;
+  }
+
+  /*************
+   * Maps the window of the file starting at mOffset, at least mBytes long
+   * @throws EOFException if the file ends first
+   */
+  private void map(long mOffset, int mBytes) throws IOException {
+    if(mOffset + mBytes > gLength) { throw new EOFException(); }
+    long tSize = Math.min(Math.max(MAP_WINDOW, mBytes), gLength - mOffset);
+    gWindow = gChannel.map(FileChannel.MapMode.READ_ONLY, mOffset, tSize);
+    gWindowStart = mOffset;
+    gWindowEnd = mOffset + tSize;
+  }
+}
@@ -0,0 +1,222 @@
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+* This class is a lock-free work-stealing deque (Chase and Lev, "Dynamic
+* Circular Work-Stealing Deque", SPAA 2005).
+*
+* One thread owns the deque. Only the owner may call addFront, removeFront,
+* pollFront, peekFront and clear: it uses the front as a stack, without
+* locking and, except when the front and back meet, without even a CAS.
+* Any thread may take from the back with removeBack, steal or peekBack;
+* thieves race each other and the owner with a CAS on the back index.
+* addBack is not supported, since only the owner may add.
+*
+* Guarantees: every item pushed is returned by exactly one removeFront,
+* pollFront, removeBack or steal. Each of these operations is linearizable:
+* the owner's take at its successful read of the back index (or its CAS,
+* when one item is left), a thief's take at its successful CAS. isEmpty and
+* size are exact for the owner and a snapshot for other threads.
+*
+* The array doubles when full; the owner copies it, and thieves still
+* holding the old array read the same items from it. Slots the owner takes
+* from are cleared at once; a slot emptied by a thief is cleared when the
+* owner next writes to it.
+*
+* @author Ani Laliashvili @author Sarah Gregory
+*/
+
+public class WorkStealingDeque<T> implements Deque<T> {
+    public static final int MIN_CAPACITY = 16;
+
+    /**
+    * A power-of-two circular array, indexed by ever-increasing positions.
+    */
+    private static final class Ring<T> {
+        final AtomicReferenceArray<T> slots;
+        final int mask;
+
+        Ring(int capacity){
+            slots = new AtomicReferenceArray<T>(capacity);
+            mask = capacity - 1;
+        }
+
+        int capacity(){ return mask + 1; }
+
+        T get(long position){ return slots.get((int) position & mask); }
+
+        void set(long position, T item){ slots.set((int) position & mask, item); }
+
+        /**
+        * Returns a ring twice the size holding the items from top up to bottom.
+        */
+        Ring<T> grow(long top, long bottom){
+            Ring<T> bigger = new Ring<T>(2 * capacity());
+            for (long i = top; i < bottom; i++) {
+                bigger.set(i, get(i));
+            }
+            return bigger;
+        }
+    }
+
+    private final AtomicLong top = new AtomicLong(); // position of the back item; thieves advance it
+    private volatile long bottom;                      // position after the front item; only the owner writes it
+    private volatile Ring<T> ring = new Ring<T>(MIN_CAPACITY);
+
+    /**
+     * Owner only: adds an item to the front of this deque
+     * @param item The item to add; not null.
+     */
+    public void addFront(T item){
+        if (item == null) {
+            throw new NullPointerException("null items can't be told apart from an empty deque");
+        }
+        long b = bottom;
+        long t = top.get();
+        Ring<T> r = ring;
+        if (b - t >= r.capacity()) {
+            r = r.grow(t, b);
+            ring = r;
+        }
+        r.set(b, item);
+        bottom = b + 1;
+    }
+
+    /**
+     * Owner only: removes the item from the front of this deque, and returns it.
+     * Throws a NoSuchElementException if the deque is empty
+     * @return the item at the top of the deque
+     */
+    public T removeFront(){
+        T item = pollFront();
+        if (item == null) {
+            throw new NoSuchElementException();
+        }
+        return item;
+    }
+
+    /**
+     * Owner only: removes the item from the front of this deque, and returns it.
+     * @return the item at the top of the deque, or null if it is empty
+     */
+    public T pollFront(){
+        long b = bottom - 1;
+        Ring<T> r = ring;
+        bottom = b;           // claim the slot before looking at the thieves
+        long t = top.get();
+        if (t > b) {
+            // it was empty
+            bottom = t;
+            return null;
+        }
+        T item = r.get(b);
+        if (t == b) {
+            // the last item: the thieves may be after it too
+            if (!top.compareAndSet(t, t + 1)) {
+                item = null;
+            }
+            bottom = t + 1;
+            return item;
+        }
+        r.set(b, null);
+        return item;
+    }
+
+    /**
+     * Not supported: only the owner adds, at the front.
+     */
+    public void addBack(T item){
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Any thread: removes the item from the back of this deque, and returns
+     * it, retrying while other threads get in the way.
+     * Throws a NoSuchElementException if the deque is empty
+     * @return the item at the back of the deque
+     */
+    public T removeBack(){
+        while (true) {
+            long t = top.get();
+            if (t >= bottom) {
+                throw new NoSuchElementException();
+            }
+            T item = ring.get(t);
+            if (top.compareAndSet(t, t + 1)) {
+                return item;
+            }
+        }
+    }
+
+    /**
+     * Any thread: tries once to take the item at the back of this deque.
+     * @return the item, or null if the deque was empty or another thread
+     * took the item first
+     */
+    public T steal(){
+        long t = top.get();
+        if (t >= bottom) {
+            return null;
+        }
+        T item = ring.get(t);
+        return top.compareAndSet(t, t + 1) ? item : null;
+    }
+
+    /**
+     * Owner only: returns the item at the front of the deque, without removing it.
+     * If it is the only item, a thief may take it before this returns.
+     * Throws a NoSuchElementException if the deque is empty
+     * @return the item at the top of the deque
+     */
+    public T peekFront(){
+        long b = bottom;
+        if (top.get() >= b) {
+            throw new NoSuchElementException();
+        }
+        return ring.get(b - 1);
+    }
+
+    /**
+     * Any thread: returns the item at the back of the deque, without removing
+     * it. The item may have been taken by the time this returns.
+     * Throws a NoSuchElementException if the deque is empty
+     * @return the item at the back of the deque
+     */
+    public T peekBack(){
+        while (true) {
+            long t = top.get();
+            if (t >= bottom) {
+                throw new NoSuchElementException();
+            }
+            T item = ring.get(t);
+            if (top.get() == t && item != null) {
+                return item;
+            }
+        }
+    }
+
+    /**
+    * Returns true if the deque is empty.
+    */
+    public boolean isEmpty(){
+        return top.get() >= bottom;
+    }
+
+    /**
+    * Returns the number of items in the deque.
+    */
+    public int size(){
+        long b = bottom;
+        return (int) Math.max(0, b - top.get());
+    }
+
+    /**
+    * Owner only: removes all items from the deque.
+    */
+    public void clear(){
+        while (pollFront() != null) {
+            // keep popping; thieves may take some of them meanwhile
+        }
+    }
+}
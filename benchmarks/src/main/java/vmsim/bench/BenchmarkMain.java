@@ -0,0 +1,34 @@
+package vmsim.bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*****************
+ * BenchmarkMain - runs JMH with the usual command line, except that results
+ * are written as JSON to jmh-result.json unless -rf or -rff say otherwise,
+ * so every run leaves a file that can be compared with earlier ones.
+ *
+ * Usage: java -jar benchmarks/target/benchmarks.jar [JMH options] [benchmark regexp]
+ *
+ * @author Andy
+ *
+ */
+public class BenchmarkMain {
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions tCommandLine = new CommandLineOptions(args);
+    if(tCommandLine.shouldHelp() || tCommandLine.shouldList() || tCommandLine.shouldListProfilers()
+        || tCommandLine.shouldListResultFormats()) {
+      // nothing to run: let JMH handle it
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+    ChainedOptionsBuilder tOptions = new OptionsBuilder().parent(tCommandLine);
+    if(!tCommandLine.getResultFormat().hasValue()) { tOptions.resultFormat(ResultFormatType.JSON); }
+    if(!tCommandLine.getResult().hasValue()) { tOptions.result("jmh-result.json"); }
+    new Runner(tOptions.build()).run();
+  }
+}
@@ -0,0 +1,83 @@
+package vmsim.bench;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*****************
+ * DequeBenchmark - CircularArrayDequeImplementation against
+ * java.util.ArrayDeque, used the way CallStack uses it: as a stack at the
+ * front. pushPeekPop works at a steady depth; fillAndDrain grows the deque
+ * from empty to the given size and back.
+ * @author Andy
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DequeBenchmark {
+
+  @Param({ "10", "1000", "100000" })
+  public int size;
+
+  private Object gDeque;                  // a CircularArrayDequeImplementation
+  private ArrayDeque<Object> gArrayDeque;
+  private Object gItem = new Object();
+
+  @Setup(Level.Iteration)
+  public void setUp() throws Throwable {
+    gDeque = (Object) Simulator.NEW_DEQUE.invokeExact();
+    gArrayDeque = new ArrayDeque<Object>();
+    for(int i = 0; i < size; i++) {
+      Simulator.ADD_FRONT.invokeExact(gDeque, gItem);
+      gArrayDeque.addFirst(gItem);
+    }
+  }
+
+  @Benchmark
+  public Object circularPushPeekPop() throws Throwable {
+    Simulator.ADD_FRONT.invokeExact(gDeque, gItem);
+    Object tTop = (Object) Simulator.PEEK_FRONT.invokeExact(gDeque);
+    return (Object) Simulator.REMOVE_FRONT.invokeExact(gDeque) == tTop ? tTop : null;
+  }
+
+  @Benchmark
+  public Object arrayDequePushPeekPop() {
+    gArrayDeque.addFirst(gItem);
+    Object tTop = gArrayDeque.peekFirst();
+    return gArrayDeque.removeFirst() == tTop ? tTop : null;
+  }
+
+  @Benchmark
+  public Object circularFillAndDrain() throws Throwable {
+    Object tDeque = (Object) Simulator.NEW_DEQUE.invokeExact();
+    for(int i = 0; i < size; i++) { Simulator.ADD_FRONT.invokeExact(tDeque, gItem); }
+    Object tLast = null;
+    for(int i = 0; i < size; i++) { tLast = (Object) Simulator.REMOVE_FRONT.invokeExact(tDeque); }
+    return tLast;
+  }
+
+  @Benchmark
+  public Object arrayDequeFillAndDrain() {
+    ArrayDeque<Object> tDeque = new ArrayDeque<Object>();
+    for(int i = 0; i < size; i++) { tDeque.addFirst(gItem); }
+    Object tLast = null;
+    for(int i = 0; i < size; i++) { tLast = tDeque.removeFirst(); }
+    return tLast;
+  }
+}
@@ -0,0 +1,71 @@
+package vmsim.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*****************
+ * DequeContentionBenchmark - one owner thread pushing two items and popping
+ * one, against three thieves taking from the back, on a WorkStealingDeque
+ * and on a SynchronizedDeque around CircularArrayDequeImplementation. JMH
+ * reports the owner's and the thieves' throughput separately.
+ * @author Andy
+ *
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DequeContentionBenchmark {
+
+  @Param({ "stealing", "synchronized" })
+  public String deque;
+
+  private Object gDeque;
+  private boolean bStealing;
+  private Object gItem = new Object();
+
+  @Setup(Level.Iteration)
+  public void setUp() throws Throwable {
+    bStealing = deque.equals("stealing");
+    gDeque = bStealing ? (Object) Simulator.NEW_STEALING_DEQUE.invokeExact()
+        : (Object) Simulator.NEW_SYNCHRONIZED_DEQUE.invokeExact((Object) Simulator.NEW_DEQUE.invokeExact());
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(1)
+  public Object owner() throws Throwable {
+    if(bStealing) {
+      Simulator.STEALING_ADD_FRONT.invokeExact(gDeque, gItem);
+      Simulator.STEALING_ADD_FRONT.invokeExact(gDeque, gItem);
+      return (Object) Simulator.STEALING_POLL_FRONT.invokeExact(gDeque);
+    }
+    Simulator.SYNCHRONIZED_ADD_FRONT.invokeExact(gDeque, gItem);
+    Simulator.SYNCHRONIZED_ADD_FRONT.invokeExact(gDeque, gItem);
+    return (Object) Simulator.SYNCHRONIZED_POLL_FRONT.invokeExact(gDeque);
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(3)
+  public Object thief() throws Throwable {
+    if(bStealing) { return (Object) Simulator.STEALING_STEAL.invokeExact(gDeque); }
+    return (Object) Simulator.SYNCHRONIZED_POLL_BACK.invokeExact(gDeque);
+  }
+}
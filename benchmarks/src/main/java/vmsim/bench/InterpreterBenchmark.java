@@ -0,0 +1,61 @@
+package vmsim.bench;
+
+import java.io.FileReader;
+import java.io.Reader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*****************
+ * InterpreterBenchmark - Program.step throughput on the bundled samples,
+ * with a HeadlessSimulator that discards output as the listener. A program
+ * is rewound when it finishes, and the endlessly recursive sample every
+ * RESTART_AFTER steps so its stack stays a realistic size.
+ * @author Andy
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+
+  private static final long RESTART_AFTER = 10000;
+
+  @Param({ "program-1.fakejava", "program-2.fakejava", "program-error-comments-2.fakejava" })
+  public String sample;
+
+  private Object gProgram;
+  private Object gListener;
+
+  @Setup
+  public void setUp() throws Throwable {
+    Object tImage;
+    try (Reader tReader = new FileReader(Samples.find(sample))) {
+      tImage = (Object) Simulator.READ_IMAGE.invokeExact(sample, tReader);
+    }
+    gListener = (Object) Simulator.NEW_LISTENER.invokeExact((Object) null);
+    gProgram = (Object) Simulator.NEW_PROGRAM.invokeExact(tImage, gListener);
+  }
+
+  @Benchmark
+  public void step() throws Throwable {
+    if((boolean) Simulator.IS_FINISHED.invokeExact(gProgram)
+        || (long) Simulator.GET_STEPS.invokeExact(gProgram) >= RESTART_AFTER) {
+      Simulator.RESET.invokeExact(gProgram);
+    }
+    Simulator.STEP.invokeExact(gProgram, gListener);
+  }
+}
@@ -0,0 +1,63 @@
+package vmsim.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*****************
+ * ParserBenchmark - loading a program: the syntax check and building the
+ * method table, which ProgramLexer does in one pass. The source is read
+ * into memory first, so only parsing is timed. "program-2" is the bundled
+ * sample; a number is a program written by ProgramGenerator with that
+ * many methods, as LoaderBenchmark times.
+ * @author Andy
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+  @Param({ "program-2", "1000", "100000" })
+  public String input;
+
+  private String gSource;
+
+  @Setup
+  public void setUp() throws Throwable {
+    File tFile;
+    if(input.startsWith("program-")) {
+      tFile = Samples.find(input + ".fakejava");
+    } else {
+      tFile = File.createTempFile("generated-", ".fakejava");
+      tFile.deleteOnExit();
+      Simulator.GENERATE.invokeExact(tFile, Integer.parseInt(input));
+    }
+    gSource = new String(Files.readAllBytes(tFile.toPath()), StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public Object load() throws Throwable {
+    Reader tReader = new StringReader(gSource);
+    return (Object) Simulator.READ_IMAGE.invokeExact(input, tReader);
+  }
+}
@@ -0,0 +1,25 @@
+package vmsim.bench;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+/*****************
+ * Samples - finds the bundled .fakejava programs, whether the benchmarks
+ * are run from the repository or from benchmarks/
+ * @author Andy
+ *
+ */
+final class Samples {
+
+  private Samples() { }
+
+  static File find(String mName) throws FileNotFoundException {
+    String tDir = System.getProperty("vmsim.samples");
+    String[] tDirs = tDir != null ? new String[] { tDir } : new String[] { ".", ".." };
+    for(String tCandidate: tDirs) {
+      File tFile = new File(tCandidate, mName);
+      if(tFile.isFile()) { return tFile; }
+    }
+    throw new FileNotFoundException(mName + " not found; run from the repository or set -Dvmsim.samples=dir");
+  }
+}
@@ -0,0 +1,110 @@
+package vmsim.bench;
+
+import java.io.File;
+import java.io.Reader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/*****************
+ * Simulator - reaches the simulator's classes from the benchmarks.
+ * The simulator lives in the default package, which can't be imported, and
+ * JMH won't generate code for benchmarks in the default package, so every
+ * class and method is looked up once into a static final MethodHandle.
+ * invokeExact on such a handle is inlined by the JIT, so going through this
+ * bridge costs the same as a direct call.
+ * @author Andy
+ *
+ */
+final class Simulator {
+
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+  // CircularArrayDequeImplementation
+  static final MethodHandle NEW_DEQUE = constructor("CircularArrayDequeImplementation");
+  static final MethodHandle ADD_FRONT = virtual("CircularArrayDequeImplementation", "addFront", void.class, Object.class);
+  static final MethodHandle REMOVE_FRONT = virtual("CircularArrayDequeImplementation", "removeFront", Object.class);
+  static final MethodHandle PEEK_FRONT = virtual("CircularArrayDequeImplementation", "peekFront", Object.class);
+
+  // WorkStealingDeque and a SynchronizedDeque around CircularArrayDequeImplementation
+  static final MethodHandle NEW_STEALING_DEQUE = constructor("WorkStealingDeque");
+  static final MethodHandle STEALING_ADD_FRONT = virtual("WorkStealingDeque", "addFront", void.class, Object.class);
+  static final MethodHandle STEALING_POLL_FRONT = virtual("WorkStealingDeque", "pollFront", Object.class);
+  static final MethodHandle STEALING_STEAL = virtual("WorkStealingDeque", "steal", Object.class);
+  static final MethodHandle NEW_SYNCHRONIZED_DEQUE = constructor("SynchronizedDeque", type("Deque"));
+  static final MethodHandle SYNCHRONIZED_ADD_FRONT = virtual("SynchronizedDeque", "addFront", void.class, Object.class);
+  static final MethodHandle SYNCHRONIZED_POLL_FRONT = virtual("SynchronizedDeque", "pollFront", Object.class);
+  static final MethodHandle SYNCHRONIZED_POLL_BACK = virtual("SynchronizedDeque", "pollBack", Object.class);
+
+  // loading
+  static final MethodHandle READ_IMAGE = statik("ProgramImage", "read", type("ProgramImage"), String.class, Reader.class);
+  static final MethodHandle GENERATE = statik("ProgramGenerator", "generate", void.class, File.class, int.class);
+
+  // running
+  static final MethodHandle NEW_LISTENER = constructor("HeadlessSimulator", java.io.PrintStream.class);
+  static final MethodHandle NEW_PROGRAM = constructor("Program", type("ProgramImage"), type("SimulationListener"));
+  static final MethodHandle STEP = virtual("Program", "step", void.class, type("SimulationListener"));
+  static final MethodHandle IS_FINISHED = virtual("Program", "isFinished", boolean.class);
+  static final MethodHandle GET_STEPS = virtual("Program", "getSteps", long.class);
+  static final MethodHandle RESET = virtual("Program", "reset", void.class);
+
+  private Simulator() { }
+
+  /*************
+   * Gets a simulator class by name
+   */
+  static Class<?> type(String mName) {
+    try {
+      return Class.forName(mName);
+    } catch(ClassNotFoundException e) {
+      throw new IllegalStateException("Simulator class " + mName + " is not on the class path", e);
+    }
+  }
+
+  // the handles below take and return Object in place of simulator types,
+  // so benchmarks can call invokeExact on them
+
+  private static MethodHandle constructor(String mClass, Class<?>... mParams) {
+    try {
+      MethodHandle tHandle = LOOKUP.findConstructor(type(mClass), MethodType.methodType(void.class, mParams));
+      return tHandle.asType(tHandle.type().generic());
+    } catch(ReflectiveOperationException e) {
+      throw new IllegalStateException("No constructor for " + mClass, e);
+    }
+  }
+
+  private static MethodHandle virtual(String mClass, String mName, Class<?> mReturn, Class<?>... mParams) {
+    try {
+      MethodHandle tHandle = LOOKUP.findVirtual(type(mClass), mName, MethodType.methodType(mReturn, mParams));
+      return tHandle.asType(erase(tHandle.type()));
+    } catch(ReflectiveOperationException e) {
+      throw new IllegalStateException("No method " + mClass + "." + mName, e);
+    }
+  }
+
+  private static MethodHandle statik(String mClass, String mName, Class<?> mReturn, Class<?>... mParams) {
+    try {
+      MethodHandle tHandle = LOOKUP.findStatic(type(mClass), mName, MethodType.methodType(mReturn, mParams));
+      return tHandle.asType(erase(tHandle.type()));
+    } catch(ReflectiveOperationException e) {
+      throw new IllegalStateException("No method " + mClass + "." + mName, e);
+    }
+  }
+
+  /*************
+   * Replaces simulator classes in a method type with Object, keeping
+   * primitives, void and JDK classes
+   */
+  private static MethodType erase(MethodType mType) {
+    MethodType tType = mType;
+    for(int i = 0; i < tType.parameterCount(); i++) {
+      if(isSimulatorClass(tType.parameterType(i))) { tType = tType.changeParameterType(i, Object.class); }
+    }
+    if(isSimulatorClass(tType.returnType())) { tType = tType.changeReturnType(Object.class); }
+    return tType;
+  }
+
+  private static boolean isSimulatorClass(Class<?> mClass) {
+    return !mClass.isPrimitive() && mClass.getPackageName().isEmpty();
+  }
+}